@@ -0,0 +1,172 @@
+package com.neo.androidgesturespluralsight;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.neo.androidgesturespluralsight.models.Money;
+import com.neo.androidgesturespluralsight.models.Product;
+import com.neo.androidgesturespluralsight.util.PagedProductList;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * counts what the main grid binds and creates while a page of placeholders turns into products
+ */
+@RunWith(AndroidJUnit4.class)
+public class MainRecyclerViewAdapterTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    private RecyclerView mRecyclerView;
+    private CountingAdapter mAdapter;
+
+    // what was on screen before and after the page loaded, read on the main thread
+    private int mChildren;
+    private RecyclerView.ViewHolder[] mHolders;
+    private long[] mIds;
+    private int mBinds;
+    private int mCreates;
+
+    @Test
+    public void loadedPageIsBoundOnceIntoTheSameHolders() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final PagedProductList list = new PagedProductList(heldLoader(PagedProductList.DEFAULT_PAGE_SIZE, release));
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = mInstrumentation.getTargetContext();
+                mAdapter = new CountingAdapter(context, list);
+                list.setOnPageLoadedListener(new PagedProductList.OnPageLoadedListener() {
+                    @Override
+                    public void onPageLoaded(int start, int count) {
+                        mAdapter.notifyItemRangeChanged(start, count);
+                        loaded.countDown();
+                    }
+                });
+                mRecyclerView = new RecyclerView(context);
+                mRecyclerView.setLayoutManager(new GridLayoutManager(context, 2));
+                // change animations bind a second holder for the crossfade, count the binds alone
+                mRecyclerView.setItemAnimator(null);
+                mRecyclerView.setAdapter(mAdapter);
+                layout();
+                snapshot();
+            }
+        });
+        int placeholders = mChildren;
+        RecyclerView.ViewHolder[] holders = mHolders;
+        long[] ids = mIds;
+        int binds = mBinds;
+        int creates = mCreates;
+        assertTrue(placeholders > 0);
+        assertEquals("every visible placeholder bound once", placeholders, binds);
+
+        release.countDown();
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                layout();
+                snapshot();
+            }
+        });
+
+        assertEquals(placeholders, mChildren);
+        assertEquals("one bind per loaded position", placeholders, mBinds - binds);
+        assertEquals("no holder created for the loaded products", creates, mCreates);
+        for (int i = 0; i < placeholders; i++) {
+            assertSame(holders[i], mHolders[i]);
+            assertEquals(ids[i], mIds[i]);
+            assertEquals(1000 + mHolders[i].getAdapterPosition(), mIds[i]);
+        }
+    }
+
+    private void layout() {
+        mRecyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private void snapshot() {
+        mChildren = mRecyclerView.getChildCount();
+        mHolders = new RecyclerView.ViewHolder[mChildren];
+        mIds = new long[mChildren];
+        for (int i = 0; i < mChildren; i++) {
+            mHolders[i] = mRecyclerView.getChildViewHolder(mRecyclerView.getChildAt(i));
+            mIds[i] = mHolders[i].getItemId();
+        }
+        mBinds = mAdapter.mBinds;
+        mCreates = mAdapter.mCreates;
+    }
+
+    /**
+     * products with serial numbers from 1000, pages are held back until release is counted down
+     */
+    private static PagedProductList.PageLoader heldLoader(int count, final CountDownLatch release) {
+        Product[] products = new Product[count];
+        for (int i = 0; i < count; i++) {
+            products[i] = new Product("Product " + i, R.drawable.ic_launcher_background, "Mug", Money.ofCents(100), 1000 + i);
+        }
+        final PagedProductList.PageLoader loader = PagedProductList.arrayLoader(products);
+        return new PagedProductList.PageLoader() {
+            @Override
+            public int getCount() {
+                return loader.getCount();
+            }
+
+            @Override
+            public int getSerialNumber(int position) {
+                return loader.getSerialNumber(position);
+            }
+
+            @Override
+            public int loadPage(int start, Product[] out) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return loader.loadPage(start, out);
+            }
+        };
+    }
+
+
+    private static final class CountingAdapter extends MainRecyclerViewAdapter {
+        int mBinds;
+        int mCreates;
+
+        CountingAdapter(Context context, PagedProductList products) {
+            super(context, products);
+        }
+
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            mCreates++;
+            return super.onCreateViewHolder(parent, viewType);
+        }
+
+        @Override
+        public void onBindViewHolder(ViewHolder holder, int position) {
+            mBinds++;
+            super.onBindViewHolder(holder, position);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.neo.androidgesturespluralsight.models;
+
+import android.os.Parcel;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.neo.androidgesturespluralsight.resources.ProductHeaders;
+import com.neo.androidgesturespluralsight.resources.Products;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * checks the Parcel side of the product wire format on a device, the JVM side is in ProductCodecBenchmark
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductParcelTest {
+
+    @Test
+    public void catalogProductIsSentAsReference() {
+        Parcel parcel = Parcel.obtain();
+        try {
+            Products.HOODY_NAVY.writeToParcel(parcel, 0);
+            assertEquals(8, parcel.dataSize());
+            assertTrue(parcel.dataSize() < legacySize(Products.HOODY_NAVY));
+
+            parcel.setDataPosition(0);
+            assertSame(Products.HOODY_NAVY, Product.CREATOR.createFromParcel(parcel));
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void otherProductsKeepTheirPrice() {
+        Product header = ProductHeaders.newHeader(1);
+        Product custom = new Product(Products.MUG_11OZ);
+        custom.setPrice(Money.ofCents(999));
+
+        for (Product product : new Product[]{header, custom}) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                product.writeToParcel(parcel, 0);
+                assertTrue(parcel.dataSize() < legacySize(product));
+
+                parcel.setDataPosition(0);
+                Product read = Product.CREATOR.createFromParcel(parcel);
+                assertEquals(product.getSerial_number(), read.getSerial_number());
+                assertEquals(product.getTitle(), read.getTitle());
+                assertEquals(product.getPrice(), read.getPrice());
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+
+    /**
+     * size of the old layout: title, image, type, serial
+     */
+    private static int legacySize(Product product) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeString(product.getTitle());
+            parcel.writeInt(product.getImage());
+            parcel.writeString(product.getType());
+            parcel.writeInt(product.getSerial_number());
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
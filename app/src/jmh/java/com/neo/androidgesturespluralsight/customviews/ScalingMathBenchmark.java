@@ -0,0 +1,67 @@
+package com.neo.androidgesturespluralsight.customviews;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * translation clamping done by ScalingImageView on every drag and scale event, and a whole drag step.
+ * inputs cycle through in bounds and out of bounds cases for zoomed and not zoomed content
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingMathBenchmark {
+
+    private static final float VIEW_SIZE = 1080f;
+
+    private final float[] mTranslations = {-2500f, -900f, -10f, 0f, 35f, 400f};
+    private final float[] mContentSizes = {720f, 1080f, 2160f, 4320f};
+    private int mNext;
+    private final ImageTransform mTransform = new ImageTransform();
+    private final float[] mValues = new float[9];
+
+    @Setup
+    public void setUp() {
+        mTransform.setViewSize(VIEW_SIZE, 1920f);
+        mTransform.fitToScreen(1000f, 1000f);
+        mTransform.scale(3f, 540f, 960f);
+    }
+
+    @Benchmark
+    public float getFixTranslation() {
+        mNext++;
+        return ImageTransform.getFixTranslation(mTranslations[mNext % mTranslations.length], VIEW_SIZE,
+                mContentSizes[mNext & 3]);
+    }
+
+    @Benchmark
+    public float getFixDragTrans() {
+        mNext++;
+        return ImageTransform.getFixDragTrans(mTranslations[mNext % mTranslations.length], VIEW_SIZE,
+                mContentSizes[mNext & 3]);
+    }
+
+    /**
+     * what one ACTION_MOVE of a pan costs on top of the framework, back and forth so it stays in bounds
+     */
+    @Benchmark
+    public float[] dragStep() {
+        mNext++;
+        mTransform.drag((mNext & 1) == 0 ? 12f : -12f, (mNext & 1) == 0 ? -7f : 7f);
+        mTransform.getValues(mValues);
+        return mValues;
+    }
+}
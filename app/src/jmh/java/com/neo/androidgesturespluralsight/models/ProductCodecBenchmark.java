@@ -0,0 +1,96 @@
+package com.neo.androidgesturespluralsight.models;
+
+import com.neo.androidgesturespluralsight.resources.Products;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * product wire format round trips. Parcel itself only exists on a device, so the old format is
+ * emulated the way Parcel lays it out (length prefixed UTF-16 strings padded to 4 bytes).
+ * the device side sizes are checked by ProductParcelTest
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductCodecBenchmark {
+
+    private Product mCatalogProduct;
+    private Product mCustomProduct;
+    private ByteBuffer mLegacy;
+
+    @Setup
+    public void setUp() {
+        mCatalogProduct = Products.HOODY_NAVY;
+        mCustomProduct = new Product("Navy Hoody (custom print)", 0, "Hoody", Money.ofCents(3999), -1);
+        mLegacy = ByteBuffer.allocate(1024);
+        // touching Products registers the catalog with the codec
+        if (Products.bySerial(mCatalogProduct.getSerial_number()) != mCatalogProduct) {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * what the reference encoding costs: a serial number written and resolved against the catalog
+     */
+    @Benchmark
+    public Product referenceRoundTrip() {
+        ProductCodec.Catalog catalog = ProductCodec.catalog();
+        if (!ProductCodec.isReference(mCatalogProduct, catalog)) {
+            throw new AssertionError();
+        }
+        return ProductCodec.resolve(mCatalogProduct.getSerial_number(), catalog);
+    }
+
+    @Benchmark
+    public Product encodedRoundTrip() {
+        return ProductCodec.decode(ProductCodec.encode(mCustomProduct));
+    }
+
+    @Benchmark
+    public Product legacyRoundTrip() {
+        ByteBuffer buffer = mLegacy;
+        buffer.clear();
+        writeString(buffer, mCatalogProduct.getTitle());
+        buffer.putInt(mCatalogProduct.getImage());
+        writeString(buffer, mCatalogProduct.getType());
+        buffer.putInt(mCatalogProduct.getSerial_number());
+        buffer.flip();
+        String title = readString(buffer);
+        int image = buffer.getInt();
+        String type = readString(buffer);
+        return new Product(title, image, type, null, buffer.getInt());
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        buffer.putInt(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.putChar(value.charAt(i));
+        }
+        buffer.putChar((char) 0);
+        buffer.position((buffer.position() + 3) & ~3);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        char[] chars = new char[buffer.getInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        buffer.position((buffer.position() + 2 + 3) & ~3);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,53 @@
+package com.neo.androidgesturespluralsight.resources;
+
+import com.neo.androidgesturespluralsight.models.Product;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one search keystroke on a synthetic 100k product catalog, the budget is 1 ms per query.
+ * run with -prof gc to see the allocation rate, ProductSearchIndexTest asserts it is zero
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+    @Param({"100000"})
+    public int mCatalogSize;
+
+    // what the search box sees while "navy hoody 4" is typed
+    @Param({"n", "navy", "navy h", "navy hoody 4", "zzz"})
+    public String mQuery;
+
+    private ProductSearchIndex mIndex;
+    private final List<Product> mResults = new ArrayList<>(100);
+
+    @Setup
+    public void setUp() {
+        mIndex = ProductSearchIndex.of(ProductSearchIndexTest.syntheticCatalog(mCatalogSize));
+    }
+
+    @Benchmark
+    public int search() {
+        mResults.clear();
+        return mIndex.search(mQuery, 100, mResults);
+    }
+}
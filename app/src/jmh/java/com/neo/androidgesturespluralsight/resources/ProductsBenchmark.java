@@ -0,0 +1,81 @@
+package com.neo.androidgesturespluralsight.resources;
+
+import com.neo.androidgesturespluralsight.models.Product;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * catalog lookups: serial number index, type index and search
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductsBenchmark {
+
+    private int[] mSerials;
+    private String[] mTypes;
+    private int mNext;
+    private final List<Product> mResults = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        Product[][] groups = {Products.PHONE_CASES, Products.HOODIES, Products.MUGS, Products.T_SHIRTS,
+                Products.HALF_SLEEVES, Products.SNAPBACKS, Products.TANKS, Products.TRUCKER_HATS};
+        ArrayList<Integer> serials = new ArrayList<>();
+        mTypes = new String[groups.length];
+        for (int i = 0; i < groups.length; i++) {
+            mTypes[i] = groups[i][0].getType();
+            for (Product product : groups[i]) {
+                serials.add(product.getSerial_number());
+            }
+        }
+        mSerials = new int[serials.size()];
+        for (int i = 0; i < mSerials.length; i++) {
+            mSerials[i] = serials.get(i);
+        }
+        // build the lazy indexes outside the measurement
+        Products.bySerial(mSerials[0]);
+        Products.variantsOf(mTypes[0]);
+        Products.searchIndex();
+    }
+
+    @Benchmark
+    public Product bySerial() {
+        mNext = (mNext + 1) % mSerials.length;
+        return Products.bySerial(mSerials[mNext]);
+    }
+
+    @Benchmark
+    public Product bySerialMiss() {
+        return Products.bySerial(42);
+    }
+
+    @Benchmark
+    public List<Product> variantsOf() {
+        mNext = (mNext + 1) % mTypes.length;
+        return Products.variantsOf(mTypes[mNext]);
+    }
+
+    @Benchmark
+    public void searchPrefix(Blackhole blackhole) {
+        mResults.clear();
+        blackhole.consume(Products.searchIndex().search("navy h", 100, mResults));
+    }
+}
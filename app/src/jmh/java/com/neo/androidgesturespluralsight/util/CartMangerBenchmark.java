@@ -0,0 +1,106 @@
+package com.neo.androidgesturespluralsight.util;
+
+import com.neo.androidgesturespluralsight.models.Money;
+import com.neo.androidgesturespluralsight.models.Product;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cart add / remove / read against a cart store in a temp directory, for carts of different sizes.
+ * add and remove should cost the same for every size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartMangerBenchmark {
+
+    private static final int FIRST_SERIAL = 100000000;
+    private static final int FIRST_ITEM_POSITION = 3;     // after the three section headers
+
+    @Param({"10", "100", "1000"})
+    public int cartSize;
+
+    private File mDir;
+    private CartStore mStore;
+    private CartManger mCartManger;
+    private Product mExtraProduct;
+    private Product mFirstProduct;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("cart-benchmark", "");
+        mDir.delete();
+        mDir.mkdirs();
+
+        Product[] products = new Product[cartSize + 1];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product("Benchmark Product " + i, 0, "Benchmark", Money.ofCents(1999),
+                    FIRST_SERIAL + i);
+        }
+        mStore = CartStore.open(new File(mDir, "cart"));
+        mCartManger = new CartManger(mStore);
+        for (int i = 0; i < cartSize; i++) {
+            mCartManger.addItemToCart(products[i]);
+        }
+        mExtraProduct = products[cartSize];
+        mFirstProduct = products[0];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mStore.close();
+        delete(mDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * one add and one remove, so the cart stays the same size between invocations
+     */
+    @Benchmark
+    public void addThenRemove() {
+        mCartManger.addItemToCart(mExtraProduct);
+        mCartManger.removeItemFromCart(mExtraProduct);
+    }
+
+    /**
+     * drags the first product down one row and back, should stay flat as the cart grows
+     */
+    @Benchmark
+    public void moveItem() {
+        mCartManger.moveItem(mFirstProduct, FIRST_ITEM_POSITION + 1);
+        mCartManger.moveItem(mFirstProduct, FIRST_ITEM_POSITION);
+    }
+
+    @Benchmark
+    public List<Product> getCartItems() {
+        return mCartManger.getCartItems();
+    }
+}
@@ -0,0 +1,59 @@
+package com.neo.androidgesturespluralsight.util;
+
+import com.neo.androidgesturespluralsight.models.Money;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * price formatting as done on every cart and product bind.
+ * run with -prof gc to see allocations per call
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceFormatBenchmark {
+
+    private final Money[] mPrices = {Money.ofCents(1099), Money.ofCents(3499), Money.ofCents(2399),
+            Money.ofCents(2099), Money.ofCents(1999), Money.ofCents(2599), Money.ofCents(1399), Money.ofCents(2899)};
+    private final BigDecimal[] mDecimals = new BigDecimal[mPrices.length];
+    private final char[] mBuffer = new char[BigDecimalUtil.MAX_LENGTH];
+    private int mNext;
+
+    {
+        for (int i = 0; i < mPrices.length; i++) {
+            mDecimals[i] = mPrices[i].toBigDecimal();
+        }
+    }
+
+    @Benchmark
+    public String getValueCached() {
+        mNext = (mNext + 1) & 7;
+        return BigDecimalUtil.getValue(mPrices[mNext]);
+    }
+
+    @Benchmark
+    public int formatIntoBuffer() {
+        mNext = (mNext + 1) & 7;
+        return BigDecimalUtil.format(mPrices[mNext].getCents(), mBuffer, 0);
+    }
+
+    @Benchmark
+    public String getValueBigDecimal() {
+        mNext = (mNext + 1) & 7;
+        return BigDecimalUtil.getValue(mDecimals[mNext]);
+    }
+}
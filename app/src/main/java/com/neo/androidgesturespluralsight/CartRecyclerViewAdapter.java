@@ -13,23 +13,35 @@ import android.widget.RelativeLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.RequestOptions;
 import com.neo.androidgesturespluralsight.models.Product;
+import com.neo.androidgesturespluralsight.resources.ProductHeaders;
 import com.neo.androidgesturespluralsight.touchhelpers.ItemTouchHelperAdapter;
 import com.neo.androidgesturespluralsight.util.BigDecimalUtil;
 import com.neo.androidgesturespluralsight.util.CartManger;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 
 
+/**
+ * shows the cart list. gestures only change the CartManger, the list here follows the cart's change
+ * events, so a change made anywhere (another screen, a background sync) costs one notify call.
+ * tapping items selects them, the selection is removed from the cart in one bulk change.
+ * create it once the cart is loaded (CartManger.load), then getInstance never waits
+ */
 public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> implements
         ItemTouchHelperAdapter,
-        GestureDetector.OnGestureListener
+        GestureDetector.OnGestureListener,
+        CartManger.OnCartChangedListener
 {
     private static final String TAG = "CartRecyclerViewAd";
 
@@ -37,19 +49,47 @@ public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
     private static final int PRODUCT_TYPE = 1;
     private static final int HEADER_TYPE = 2;
 
+    // kind of the run of rows changed in a batch that hasn't been notified yet
+    private static final int NO_RUN = 0;
+    private static final int INSERTED_RUN = 1;
+    private static final int REMOVED_RUN = 2;
+
     //vars
-    private ArrayList<Product> mProducts = new ArrayList<>();
+    private ArrayList<Product> mProducts;
+    private int[] mHeaderPositions = new int[ProductHeaders.HEADER_TITLES.length];    // kept up to date with mProducts
     private Context mContext;
     private ItemTouchHelper mTouchHelper;   // listener for the CartItemTouchHelperClass
     private GestureDetector mGestureDetector;
     private ViewHolder mSelectedHolder;     // ref to ViewHolder or view user tries to move
+    private LinkedHashMap<Integer, Product> mSelection = new LinkedHashMap<>();    // tapped items by serial number
+
+    // a batch of events is notified as ranges, and each header that changed is rebound once at the end
+    private boolean mInBatch;
+    private int mRunType = NO_RUN;
+    private int mRunStart, mRunCount;
+    private boolean[] mChangedSections = new boolean[ProductHeaders.HEADER_TITLES.length];
 
 
 
-    public CartRecyclerViewAdapter(Context context, ArrayList<Product> products) {
+    public CartRecyclerViewAdapter(Context context) {
         mContext = context;
-        mProducts = products;
+        List<Product> cartList = CartManger.getInstance(mContext).addOnCartChangedListener(this);
+        mProducts = new ArrayList<>(cartList);
+        for(int position = 0; position < mProducts.size(); position++){
+            if(mProducts.get(position).getSerial_number() < 0){
+                mHeaderPositions[ProductHeaders.sectionOf(mProducts.get(position))] = position;
+            }
+        }
         mGestureDetector = new GestureDetector(mContext, this);
+        // lets RecyclerView match rows across moves and removals instead of rebinding them
+        setHasStableIds(true);
+    }
+
+    /**
+     * stops following the cart, call when the screen goes away
+     */
+    public void release() {
+        CartManger.getInstance(mContext).removeOnCartChangedListener(this);
     }
 
     @Override
@@ -83,15 +123,20 @@ public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
 
             ((ViewHolder)holder).title.setText(mProducts.get(position).getTitle());
             ((ViewHolder)holder).price.setText(BigDecimalUtil.getValue(mProducts.get(position).getPrice()));
+            boolean selected = mSelection.containsKey(mProducts.get(position).getSerial_number());
+            ((ViewHolder)holder).parentView.setBackgroundColor(ContextCompat.getColor(mContext,
+                    selected ? R.color.lightOrange : android.R.color.transparent));
 
             ((ViewHolder)holder).parentView.setOnTouchListener(new View.OnTouchListener() {
                 @Override
                 public boolean onTouch(View v, MotionEvent event) {
                     ((ViewCartActivity)mContext).setIsScrolling(false);
-                    if (event.getAction() == MotionEvent.ACTION_DOWN) {
+                    if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
                         mSelectedHolder = ((ViewHolder)holder);
-                        mGestureDetector.onTouchEvent(event);
                     }
+                    // the whole stream, the detector needs the moves and the cancel to tell a tap
+                    // (which selects the item) from a scroll or a long press
+                    mGestureDetector.onTouchEvent(event);
 
                     return true;
                 }
@@ -100,6 +145,13 @@ public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
         else{
             SectionHeaderViewHolder headerViewHolder = (SectionHeaderViewHolder) holder;
             headerViewHolder.sectionTitle.setText(mProducts.get(position).getTitle());
+
+            // running totals, nothing is summed here
+            CartManger cartManger = CartManger.getInstance(mContext);
+            int section = ProductHeaders.sectionOf(mProducts.get(position));
+            int count = cartManger.getItemCount(section);
+            headerViewHolder.sectionSubtotal.setText(mContext.getResources().getQuantityString(
+                    R.plurals.cart_section_summary, count, count, BigDecimalUtil.getValue(cartManger.getSubtotal(section))));
         }
 
 
@@ -110,6 +162,12 @@ public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
         return mProducts.size();
     }
 
+    @Override
+    public long getItemId(int position) {
+        // products use their serial number, section headers have negative serials of their own
+        return mProducts.get(position).getSerial_number();
+    }
+
     @Override
     public int getItemViewType(int position) {          // ret the int ViewHolder view type to OnCreateView Holder
         if(TextUtils.isEmpty(mProducts.get(position).getType())){
@@ -125,23 +183,149 @@ public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
      */
     @Override
     public void onItemMove(int fromPosition, int toPosition) {
-        // gets a product using a from pos, create a new product using that product,
-        // remove from list and add product to "toPosition" and notify adapter
-        Product fromProduct = mProducts.get(fromPosition);
-        Product product = new Product(fromProduct);
-        mProducts.remove(fromPosition);
-        mProducts.add(toPosition, product);
-        notifyItemMoved(fromPosition, toPosition);
+        // the rows move when the cart reports the move back, which happens before this returns
+        CartManger.getInstance(mContext).moveItem(mProducts.get(fromPosition), toPosition);
     }
 
     @Override
     public void onItemSwiped(int position) {
-        // removes item from RV list and in the shopping cart
-        CartManger cartManger = new CartManger(mContext);
-        cartManger.removeItemFromCart(mProducts.get(position));
+        // nothing is saved until the undo has expired
+        Product product = mProducts.get(position);
+        CartManger.getInstance(mContext).removeItemUndoably(product);
+        ((ViewCartActivity)mContext).showUndo(product);
+    }
+
+    /**
+     * removes every selected item from the cart in one go
+     */
+    public void removeSelected() {
+        CartManger.getInstance(mContext).removeAll(new ArrayList<>(mSelection.values()));
+    }
+
+    private void toggleSelection(int position) {
+        Product product = mProducts.get(position);
+        if(mSelection.remove(product.getSerial_number()) == null){
+            mSelection.put(product.getSerial_number(), product);
+        }
+        notifyItemChanged(position);
+        ((ViewCartActivity)mContext).onSelectionChanged(mSelection.size());
+    }
+
+    /*
+    cart change events, each one is applied to mProducts right away. the notify calls for a single
+    change are made right away too, in a batch they are merged into ranges and made at the end
+     */
+    @Override
+    public void onItemAdded(Product product, int position, int section) {
+        mProducts.add(position, product);
+        shiftHeaders(position, 1);
+        if(mRunType == INSERTED_RUN && position == mRunStart + mRunCount){
+            mRunCount++;
+        }
+        else{
+            startRun(INSERTED_RUN, position);
+        }
+        mChangedSections[section] = true;      // subtotal of the section went up
+        finishUnlessBatch();
+    }
+
+    @Override
+    public void onItemRemoved(Product product, int position, int section) {
+        mProducts.remove(position);
+        shiftHeaders(position, -1);
+        if(mRunType == REMOVED_RUN && position == mRunStart){
+            mRunCount++;        // removed top down
+        }
+        else if(mRunType == REMOVED_RUN && position == mRunStart - 1){
+            mRunStart--;        // removed bottom up
+            mRunCount++;
+        }
+        else{
+            startRun(REMOVED_RUN, position);
+        }
+        mChangedSections[section] = true;      // subtotal of the section went down
+        if(mSelection.remove(product.getSerial_number()) != null){
+            ((ViewCartActivity)mContext).onSelectionChanged(mSelection.size());
+        }
+        finishUnlessBatch();
+    }
+
+    @Override
+    public void onItemMoved(Product product, int fromPosition, int toPosition, int fromSection, int toSection) {
+        // a drag moves one row at a time, so this is usually a swap with the neighbour
+        if(Math.abs(toPosition - fromPosition) == 1){
+            Collections.swap(mProducts, fromPosition, toPosition);
+        }
+        else{
+            mProducts.remove(fromPosition);
+            mProducts.add(toPosition, product);
+        }
+        shiftHeaders(fromPosition, -1);
+        shiftHeaders(toPosition, 1);
+        endRun();
+        notifyItemMoved(fromPosition, toPosition);
+
+        if(fromSection != toSection){
+            // dragged over a header, both subtotals changed
+            mChangedSections[fromSection] = true;
+            mChangedSections[toSection] = true;
+        }
+        finishUnlessBatch();
+    }
+
+    @Override
+    public void onBatchStarted() {
+        mInBatch = true;
+    }
+
+    @Override
+    public void onBatchFinished() {
+        mInBatch = false;
+        finishUnlessBatch();
+    }
+
+    private void startRun(int type, int position) {
+        endRun();
+        mRunType = type;
+        mRunStart = position;
+        mRunCount = 1;
+    }
+
+    /**
+     * notifies the pending run of inserted or removed rows as one range
+     */
+    private void endRun() {
+        if(mRunType == INSERTED_RUN){
+            notifyItemRangeInserted(mRunStart, mRunCount);
+        }
+        else if(mRunType == REMOVED_RUN){
+            notifyItemRangeRemoved(mRunStart, mRunCount);
+        }
+        mRunType = NO_RUN;
+    }
 
-        mProducts.remove(mProducts.get(position));
-        notifyItemRemoved(position);
+    private void finishUnlessBatch() {
+        if(mInBatch){
+            return;
+        }
+        endRun();
+        for(int section = 0; section < mChangedSections.length; section++){
+            if(mChangedSections[section]){
+                mChangedSections[section] = false;
+                notifyItemChanged(mHeaderPositions[section]);
+            }
+        }
+    }
+
+    /**
+     * moves the headers at or after position by delta, after a row was inserted there (1) or removed from there (-1)
+     */
+    private void shiftHeaders(int position, int delta) {
+        for(int section = 0; section < mHeaderPositions.length; section++){
+            if(mHeaderPositions[section] > position || (delta > 0 && mHeaderPositions[section] == position)){
+                mHeaderPositions[section] += delta;
+            }
+        }
     }
 
     public void setTouchHelper(ItemTouchHelper touchHelper) {
@@ -164,7 +348,11 @@ public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
 
     @Override
     public boolean onSingleTapUp(MotionEvent motionEvent) {
-        return false;
+        int position = mSelectedHolder.getAdapterPosition();
+        if(position != RecyclerView.NO_POSITION){
+            toggleSelection(position);
+        }
+        return true;
     }
 
     @Override
@@ -202,11 +390,12 @@ public class CartRecyclerViewAdapter extends RecyclerView.Adapter<RecyclerView.V
 
     public class SectionHeaderViewHolder extends RecyclerView.ViewHolder {
 
-        TextView sectionTitle;
+        TextView sectionTitle, sectionSubtotal;
 
         public SectionHeaderViewHolder(View itemView) {
             super(itemView);
             sectionTitle = itemView.findViewById(R.id.cart_section_header);
+            sectionSubtotal = itemView.findViewById(R.id.cart_section_subtotal);
         }
     }
 }
@@ -56,6 +56,9 @@ public class FullScreenProductFragment extends Fragment
         method sets the image in the placeholder
      */
     private void setProduct(){
+        if(mProduct == null){
+            return;     // couldn't be read back from the arguments
+        }
         RequestOptions requestOptions = new RequestOptions()
                 .placeholder(R.drawable.ic_launcher_background);
 
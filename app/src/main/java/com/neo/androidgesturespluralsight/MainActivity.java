@@ -8,20 +8,28 @@ import android.widget.RelativeLayout;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.neo.androidgesturespluralsight.models.Product;
 import com.neo.androidgesturespluralsight.resources.Products;
+import com.neo.androidgesturespluralsight.util.CartManger;
+import com.neo.androidgesturespluralsight.util.DebouncedProductSearch;
+import com.neo.androidgesturespluralsight.util.PagedProductList;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 public class MainActivity extends AppCompatActivity implements
         View.OnClickListener,
-        SwipeRefreshLayout.OnRefreshListener
+        SwipeRefreshLayout.OnRefreshListener,
+        SearchView.OnQueryTextListener,
+        DebouncedProductSearch.OnSearchResultsListener,
+        PagedProductList.OnPageLoadedListener
 {
 
     private static final String TAG = "MainActivity";
@@ -29,12 +37,15 @@ public class MainActivity extends AppCompatActivity implements
 
     //vars
     MainRecyclerViewAdapter mAdapter;
-    private ArrayList<Product> mProducts = new ArrayList<>();
+    private PagedProductList mCatalogProducts;      // products shown when not searching
+    private DebouncedProductSearch mSearch;
 
     //widgets
     private RecyclerView mRecyclerView;
+    private GridLayoutManager mLayoutManager;
     private RelativeLayout mCart;
     private SwipeRefreshLayout mSwipeRefreshLayout;
+    private SearchView mSearchView;
 
 
     @Override
@@ -44,23 +55,54 @@ public class MainActivity extends AppCompatActivity implements
         mRecyclerView = findViewById(R.id.recycler_view);
         mCart = findViewById(R.id.cart);
         mSwipeRefreshLayout = findViewById(R.id.swipe_refresh_layout);
+        mSearchView = findViewById(R.id.search_view);
 
         mSwipeRefreshLayout.setOnRefreshListener(this);
         mCart.setOnClickListener(this);
+        mSearchView.setOnQueryTextListener(this);
 
-        getProducts();
+        // the cart isn't shown here, read it in the background so it is ready when it is
+        CartManger.preload(this);
+        getProducts(Products.FEATURED_PRODUCTS);
         initRecyclerView();
     }
 
-    private void getProducts(){
-        mProducts.addAll(Arrays.asList(Products.FEATURED_PRODUCTS));
+    /**
+     * sets up the paged list the grid shows, pages are loaded in the background as the user scrolls
+     */
+    private void getProducts(Product[] products){
+        if(mCatalogProducts != null){
+            mCatalogProducts.release();
+        }
+        mCatalogProducts = new PagedProductList(PagedProductList.arrayLoader(products));
+        mCatalogProducts.setOnPageLoadedListener(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if(mSearch != null){
+            mSearch.cancel();
+        }
+        mCatalogProducts.release();
     }
 
     private void initRecyclerView(){
-        mAdapter = new MainRecyclerViewAdapter(this, mProducts);
-        GridLayoutManager layoutManager = new GridLayoutManager(this, NUM_COLUMNS);
-        mRecyclerView.setLayoutManager(layoutManager);
+        mAdapter = new MainRecyclerViewAdapter(this, mCatalogProducts);
+        mLayoutManager = new GridLayoutManager(this, NUM_COLUMNS);
+        mRecyclerView.setLayoutManager(mLayoutManager);
         mRecyclerView.setAdapter(mAdapter);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                super.onScrolled(recyclerView, dx, dy);
+                if(mAdapter.getProducts() == mCatalogProducts){
+                    // lets the list prefetch the pages ahead and drop the ones far behind
+                    mCatalogProducts.onViewportChanged(mLayoutManager.findFirstVisibleItemPosition(),
+                            mLayoutManager.findLastVisibleItemPosition());
+                }
+            }
+        });
     }
 
     @Override
@@ -76,31 +118,71 @@ public class MainActivity extends AppCompatActivity implements
         }
     }
 
+    /*
+        PagedProductList CallBack
+     */
+    @Override
+    public void onPageLoaded(int start, int count) {
+        if(mAdapter.getProducts() == mCatalogProducts){
+            mAdapter.notifyItemRangeChanged(start, count);
+        }
+    }
+
     /*
        Swipe Refresh Layout CallBack
     */
     @Override
     public void onRefresh() {
-        Collections.shuffle(mProducts);
-        onItemsLoadComplete();
+        if(mAdapter.getProducts() != mCatalogProducts){
+            // search results are already up to date
+            onItemsLoadComplete();
+            return;
+        }
+        List<Product> refreshed = Arrays.asList(Products.FEATURED_PRODUCTS.clone());
+        Collections.shuffle(refreshed);
+
+        // diffed in the background, only cells whose product changed get rebound
+        mCatalogProducts.refresh(PagedProductList.arrayLoader(refreshed.toArray(new Product[0])),
+                new AdapterListUpdateCallback(mAdapter),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        onItemsLoadComplete();
+                    }
+                });
     }
 
     void onItemsLoadComplete() {
-        (mRecyclerView.getAdapter()).notifyDataSetChanged();
         mSwipeRefreshLayout.setRefreshing(false);
     }
-}
-
-
-
-
-
-
-
-
-
-
-
 
+    /*
+        SearchView CallBack
+     */
+    @Override
+    public boolean onQueryTextSubmit(String query) {
+        mSearchView.clearFocus();   // hides the keyboard, the debounced search still delivers the results
+        return true;
+    }
 
+    @Override
+    public boolean onQueryTextChange(String newText) {
+        if(mSearch == null){
+            // search index is only built once the user starts searching
+            mSearch = new DebouncedProductSearch(Products.searchIndex(), this);
+        }
+        mSearch.setQuery(newText);
+        return true;
+    }
 
+    @Override
+    public void onSearchResults(String query, List<Product> results) {
+        if(query.isEmpty()){
+            mAdapter.setProducts(mCatalogProducts);     // search cleared, go back to the catalog
+        }
+        else{
+            mAdapter.setProducts(results);
+        }
+        mAdapter.notifyDataSetChanged();
+    }
+}
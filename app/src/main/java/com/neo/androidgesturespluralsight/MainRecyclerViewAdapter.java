@@ -14,20 +14,34 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.RequestOptions;
 import com.neo.androidgesturespluralsight.models.Product;
+import com.neo.androidgesturespluralsight.util.PagedProductList;
 
-import java.util.ArrayList;
+import java.util.List;
 
 public class MainRecyclerViewAdapter extends RecyclerView.Adapter<MainRecyclerViewAdapter.ViewHolder> {
 
     private static final String TAG = "MainRecyclerViewAd";
 
     //vars
-    private ArrayList<Product> mProducts = new ArrayList<>();
+    private List<Product> mProducts;       // may hold nulls for products that are still loading
     private Context mContext;
 
-    public MainRecyclerViewAdapter(Context context, ArrayList<Product> products) {
+    public MainRecyclerViewAdapter(Context context, List<Product> products) {
         mContext = context;
         mProducts = products;
+        // lets RecyclerView match cells across refreshes and list swaps instead of rebinding them
+        setHasStableIds(true);
+    }
+
+    /**
+     * swaps the list the grid shows, caller is responsible for notifying the change
+     */
+    public void setProducts(List<Product> products) {
+        mProducts = products;
+    }
+
+    public List<Product> getProducts() {
+        return mProducts;
     }
 
     @Override
@@ -39,12 +53,21 @@ public class MainRecyclerViewAdapter extends RecyclerView.Adapter<MainRecyclerVi
 
     @Override
     public void onBindViewHolder(final ViewHolder holder, final int position) {
+        final Product product = mProducts.get(position);
+        if (product == null) {
+            // page still loading, show the placeholder until onPageLoaded rebinds this position
+            Glide.with(mContext).clear(holder.image);
+            holder.image.setImageResource(R.drawable.ic_launcher_background);
+            holder.cardView.setOnClickListener(null);
+            return;
+        }
+
         RequestOptions requestOptions = new RequestOptions()
                         .placeholder(R.drawable.ic_launcher_background);
 
         Glide.with(mContext)
                 .setDefaultRequestOptions(requestOptions)
-                .load(mProducts.get(position).getImage())
+                .load(product.getImage())
                 .into(holder.image);
 
         // best practice is to set the OnLickListener in the custom ViewHolder class
@@ -52,13 +75,23 @@ public class MainRecyclerViewAdapter extends RecyclerView.Adapter<MainRecyclerVi
             @Override
             public void onClick(View view) {
                 Intent intent = new Intent(mContext, ViewProductActivity.class);
-                intent.putExtra(mContext.getString(R.string.intent_product), mProducts.get(position));
+                intent.putExtra(mContext.getString(R.string.intent_product), product);
                 mContext.startActivity(intent);
             }
         });
     }
 
 
+    @Override
+    public long getItemId(int position) {
+        if (mProducts instanceof PagedProductList) {
+            // known before the page loads, so the placeholder and the loaded product share one id
+            // and the holder is rebound in place instead of being swapped for another one
+            return ((PagedProductList) mProducts).getSerialNumber(position);
+        }
+        return mProducts.get(position).getSerial_number();
+    }
+
     @Override
     public int getItemCount() {
         return mProducts.size();
@@ -17,14 +17,11 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.android.material.snackbar.Snackbar;
 import com.neo.androidgesturespluralsight.models.Product;
-import com.neo.androidgesturespluralsight.resources.ProductHeaders;
 import com.neo.androidgesturespluralsight.touchhelpers.CartItemTouchHelperCallback;
 import com.neo.androidgesturespluralsight.util.CartManger;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-
 
 /**
  * activity that holds list of items added to cart in Rv
@@ -35,11 +32,10 @@ public class ViewCartActivity extends AppCompatActivity implements View.OnClickL
 
     //widgets
     private RecyclerView mRecyclerView;
-    private FloatingActionButton mFab;
+    private FloatingActionButton mFab, mRemoveSelectedFab;
 
     //vars
     CartRecyclerViewAdapter mAdapter;
-    private ArrayList<Product> mProducts = new ArrayList<>();
     private boolean mIsScrolling;     // true when list is scrolling i.e we are scrolling rv
 
     @Override
@@ -48,26 +44,51 @@ public class ViewCartActivity extends AppCompatActivity implements View.OnClickL
         setContentView(R.layout.activity_view_cart);
         mRecyclerView = findViewById(R.id.recycler_view);
         mFab = findViewById(R.id.fab);
+        mRemoveSelectedFab = findViewById(R.id.fab_remove_selected);
 
         mFab.setOnClickListener(this);
+        mRemoveSelectedFab.setOnClickListener(this);
 
-        getProducts();
-        initRecyclerView();
+        // the list is set up once the cart is read, it is usually preloaded by now
+        CartManger.load(this, new CartManger.OnLoadedListener() {
+            @Override
+            public void onLoaded(CartManger cartManger) {
+                if(!isDestroyed()){
+                    initRecyclerView();
+                }
+            }
+        });
     }
 
-    private void getProducts(){
-        //add the headers with no type
-        mProducts.add(new Product(ProductHeaders.HEADER_TITLES[0], 0, "", new BigDecimal(0), 0));
-        mProducts.add(new Product(ProductHeaders.HEADER_TITLES[1], 0, "", new BigDecimal(0), 0));
-        mProducts.add(new Product(ProductHeaders.HEADER_TITLES[2], 0, "", new BigDecimal(0), 0));
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if(mAdapter != null){
+            mAdapter.release();
+        }
+    }
 
-        CartManger cartManger = new CartManger(this);
-        mProducts.addAll(cartManger.getCartItems());
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if(mAdapter == null){
+            // the cart wasn't read yet, nothing was changed here
+            return;
+        }
+        // cart changes are written in the background, start on any still queued without waiting. the undo
+        // Snackbar comes back with the activity, its removes only become final when it is finishing
+        if(isFinishing()){
+            CartManger.getInstance(this).flush();
+        }
+        else{
+            CartManger.getInstance(this).save();
+        }
     }
 
     private void initRecyclerView(){
         // assoc cartItemHelperCallback with ItemTouchHelperAdapter interface
-        mAdapter = new CartRecyclerViewAdapter(this, mProducts);
+        // the adapter reads the cart (section headers included) and follows its changes from then on
+        mAdapter = new CartRecyclerViewAdapter(this);
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         mRecyclerView.setLayoutManager(layoutManager);
 
@@ -125,11 +146,35 @@ public class ViewCartActivity extends AppCompatActivity implements View.OnClickL
         return mIsScrolling;
     }
 
+    /**
+     * offers to put back a swiped item, the undo is in memory so it is instant
+     */
+    public void showUndo(final Product product){
+        Snackbar.make(mRecyclerView, getString(R.string.removed_from_cart, product.getTitle()), Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        CartManger.getInstance(ViewCartActivity.this).undoRemove(product);
+                    }
+                })
+                .show();
+    }
+
+    /**
+     * shows the remove button while items are selected
+     */
+    public void onSelectionChanged(int selectedCount){
+        mRemoveSelectedFab.setVisibility(selectedCount > 0 ? View.VISIBLE : View.GONE);
+    }
+
     @Override
     public void onClick(View view) {
         if(view.getId() == R.id.fab){
             mRecyclerView.smoothScrollToPosition(0);  // scrolls the RV to the first pos
         }
+        else if(view.getId() == R.id.fab_remove_selected){
+            mAdapter.removeSelected();      // one cart change and one write however many are selected
+        }
     }
 
 
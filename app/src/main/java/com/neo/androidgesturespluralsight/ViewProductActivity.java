@@ -15,6 +15,7 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.Nullable;
@@ -31,6 +32,7 @@ import com.neo.androidgesturespluralsight.resources.Products;
 import com.neo.androidgesturespluralsight.util.CartManger;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Activity with swipeable images in a ViewPager
@@ -40,7 +42,8 @@ public class ViewProductActivity extends AppCompatActivity implements
         View.OnClickListener,
         GestureDetector.OnGestureListener,   // to determine the gesture
         GestureDetector.OnDoubleTapListener,  // to det doubleTap gesture
-        View.OnDragListener{                    // to det drag gesture
+        View.OnDragListener,                    // to det drag gesture
+        CartManger.OnCartChangedListener{       // to keep the cart badge up to date
 
     private static final String TAG = "ViewProductActivity";
 
@@ -49,12 +52,15 @@ public class ViewProductActivity extends AppCompatActivity implements
     private TabLayout mTabLayout;
     private RelativeLayout mAddToCart, mCart;
     private ImageView mCartIcon, mPlusIcon;
+    private TextView mCartCount;
 
     //vars
     private Product mProduct;
     private ProductPagerAdapter mPagerAdapter;
     private GestureDetector mGestureDetector;
     private Rect mCartPositionRectangle;
+    private boolean mStarted;
+    private CartManger mCartManger;     // set while started, once the cart is loaded
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -66,6 +72,7 @@ public class ViewProductActivity extends AppCompatActivity implements
         mCart = findViewById(R.id.cart);
         mPlusIcon = findViewById(R.id.plus_image);
         mCartIcon = findViewById(R.id.cart_image);
+        mCartCount = findViewById(R.id.cart_count);
 
         mProductContainer.setOnTouchListener(this);
         mGestureDetector = new GestureDetector(this, this);
@@ -73,9 +80,50 @@ public class ViewProductActivity extends AppCompatActivity implements
         mAddToCart.setOnClickListener(this);
 
         getIncomingIntent();
+        if(mProduct == null){
+            // the product couldn't be read back, e.g. a reference saved by another version of the app
+            finish();
+            return;
+        }
         initPagerAdapter();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mStarted = true;
+        CartManger.load(this, mOnCartLoaded);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mStarted = false;
+        if(mCartManger != null){
+            mCartManger.removeOnCartChangedListener(this);
+            // cart changes are written in the background, start on any still queued without waiting for the disk
+            mCartManger.save();
+            mCartManger = null;
+        }
+    }
+
+    /**
+     * the cart is read in the background, the badge shows up once it is
+     */
+    private final CartManger.OnLoadedListener mOnCartLoaded = new CartManger.OnLoadedListener() {
+        @Override
+        public void onLoaded(CartManger cartManger) {
+            if(!mStarted || mCartManger != null){
+                // stopped before it was read, or a second load from a quick stop and start
+                return;
+            }
+            mCartManger = cartManger;
+            // only the count is shown, so the list handed back here isn't needed
+            mCartManger.addOnCartChangedListener(ViewProductActivity.this);
+            setCartCount();
+        }
+    };
+
     private void getIncomingIntent(){
         Intent intent = getIntent();
         if(intent.hasExtra(getString(R.string.intent_product))){
@@ -88,8 +136,7 @@ public class ViewProductActivity extends AppCompatActivity implements
      */
     private void initPagerAdapter(){
         ArrayList<Fragment> fragments = new ArrayList<>();
-        Products products = new Products();
-        Product[] selectedProducts = products.PRODUCT_MAP.get(mProduct.getType());   // gets list of product obj variations of product passed from MainActivity
+        List<Product> selectedProducts = Products.variantsOf(mProduct.getType());   // gets list of product obj variations of product passed from MainActivity
         for(Product product: selectedProducts){
             // add each product var obj to the fragment list bundles.
             Bundle bundle = new Bundle();
@@ -139,12 +186,54 @@ public class ViewProductActivity extends AppCompatActivity implements
         }
     }
 
+    /**
+     * shows the number of items in the cart on the cart icon, a running count so this is O(1)
+     */
+    private void setCartCount(){
+        int count = mCartManger.getItemCount();
+        mCartCount.setText(String.valueOf(count));
+        mCartCount.setVisibility(count > 0 ? View.VISIBLE : View.INVISIBLE);
+    }
+
+    /*
+    cart change events
+     */
+    @Override
+    public void onItemAdded(Product product, int position, int section) {
+        setCartCount();
+    }
+
+    @Override
+    public void onItemRemoved(Product product, int position, int section) {
+        setCartCount();
+    }
+
+    @Override
+    public void onItemMoved(Product product, int fromPosition, int toPosition, int fromSection, int toSection) {
+        // the count doesn't change
+    }
+
+    @Override
+    public void onBatchStarted() {
+
+    }
+
+    @Override
+    public void onBatchFinished() {
+
+    }
+
     private void addCurrentItemToCart(){
         // gets the product variation obj in viewPager View from the fragment inView
-        Product selectedProduct = ((ViewProductFragment)mPagerAdapter.getItem(mProductContainer.getCurrentItem())).mProduct;
+        final Product selectedProduct = ((ViewProductFragment)mPagerAdapter.getItem(mProductContainer.getCurrentItem())).mProduct;
 
-        CartManger cartManger = new CartManger(this);
-        cartManger.addItemToCart(selectedProduct);
+        // right away unless the cart is still being read
+        CartManger.load(this, new CartManger.OnLoadedListener() {
+            @Override
+            public void onLoaded(CartManger cartManger) {
+                cartManger.addItemToCart(selectedProduct);
+            }
+        });
         Toast.makeText(this, "added to cart", Toast.LENGTH_SHORT).show();
     }
 
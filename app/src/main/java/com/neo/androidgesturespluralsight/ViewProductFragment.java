@@ -58,6 +58,9 @@ public class ViewProductFragment extends Fragment {
     }
 
     private void setProduct(){
+        if(mProduct == null){
+            return;     // couldn't be read back from the arguments
+        }
         RequestOptions requestOptions = new RequestOptions()
                 .placeholder(R.drawable.ic_launcher_background);
 
@@ -0,0 +1,230 @@
+package com.neo.androidgesturespluralsight.customviews;
+
+
+/**
+ * the scale and translation of the image in a ScalingImageView, and the math for pinching, dragging
+ * and keeping the image inside the view. the matrix of the view only ever holds a uniform scale and
+ * a translation, so three floats describe it and every operation is a few multiplications.
+ *
+ * plain java and nothing here allocates, so it runs once per touch event without making garbage and
+ * can be tested on the JVM.
+ */
+final class ImageTransform {
+
+    // Scales
+    private float mSaveScale = 1f;      // zoom relative to the image fitted to the view
+    private float mMinScale = 1f;
+    private float mMaxScale = 4f;
+
+    // the matrix: x' = scale * x + transX, y' = scale * y + transY
+    private float mScale = 1f;
+    private float mTransX, mTransY;
+
+    // view dimensions
+    private float mOrigWidth, mOrigHeight;     // size of the fitted image in the view
+    private float mViewWidth, mViewHeight;
+
+
+    void setViewSize(float viewWidth, float viewHeight) {
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+    }
+
+    /**
+     * scales the image to fit the view and centres it, the zoom goes back to 1
+     */
+    void fitToScreen(float imageWidth, float imageHeight) {
+        mSaveScale = 1;
+        mScale = Math.min(mViewWidth / imageWidth, mViewHeight / imageHeight);   // the limiting dimension
+
+        // centre the image in the space left over
+        mTransX = (mViewWidth - mScale * imageWidth) / 2;
+        mTransY = (mViewHeight - mScale * imageHeight) / 2;
+
+        mOrigWidth = mViewWidth - 2 * mTransX;
+        mOrigHeight = mViewHeight - 2 * mTransY;
+    }
+
+    /**
+     * zooms by the pinch's scale factor, kept between the min and max zoom. scales around the pinch
+     * focus once the image fills the view, around the view centre until then
+     */
+    void scale(float scaleFactor, float focusX, float focusY) {
+        float prevScale = mSaveScale;
+        mSaveScale *= scaleFactor;
+        if (mSaveScale > mMaxScale) {
+            mSaveScale = mMaxScale;
+            scaleFactor = mMaxScale / prevScale;
+        } else if (mSaveScale < mMinScale) {
+            mSaveScale = mMinScale;
+            scaleFactor = mMinScale / prevScale;
+        }
+
+        if (mOrigWidth * mSaveScale <= mViewWidth || mOrigHeight * mSaveScale <= mViewHeight) {
+            focusX = mViewWidth / 2;
+            focusY = mViewHeight / 2;
+        }
+        postScale(scaleFactor, focusX, focusY);
+    }
+
+    /**
+     * zooms straight to saveScale (kept between the min and max zoom) around the focus, the point under
+     * the focus stays put as far as the bounds let it
+     */
+    void zoomTo(float saveScale, float focusX, float focusY) {
+        saveScale = Math.max(mMinScale, Math.min(mMaxScale, saveScale));
+        float scaleFactor = saveScale / mSaveScale;
+        mSaveScale = saveScale;
+        postScale(scaleFactor, focusX, focusY);
+    }
+
+    /**
+     * what Matrix.postScale(scaleFactor, scaleFactor, focusX, focusY) does, then back inside the view
+     */
+    private void postScale(float scaleFactor, float focusX, float focusY) {
+        mScale *= scaleFactor;
+        mTransX = scaleFactor * mTransX + focusX * (1 - scaleFactor);
+        mTransY = scaleFactor * mTransY + focusY * (1 - scaleFactor);
+        fixTranslation();
+    }
+
+    /**
+     * moves the image with the finger, only along dimensions where it is bigger than the view
+     */
+    void drag(float dx, float dy) {
+        mTransX += getFixDragTrans(dx, mViewWidth, mOrigWidth * mSaveScale);
+        mTransY += getFixDragTrans(dy, mViewHeight, mOrigHeight * mSaveScale);
+        fixTranslation();
+    }
+
+    /**
+     * pulls the image back inside the view after a scale or translation
+     */
+    void fixTranslation() {
+        mTransX += getFixTranslation(mTransX, mViewWidth, mOrigWidth * mSaveScale);
+        mTransY += getFixTranslation(mTransY, mViewHeight, mOrigHeight * mSaveScale);
+    }
+
+    /**
+     * makes this a copy of other
+     */
+    void set(ImageTransform other) {
+        mSaveScale = other.mSaveScale;
+        mMinScale = other.mMinScale;
+        mMaxScale = other.mMaxScale;
+        mScale = other.mScale;
+        mTransX = other.mTransX;
+        mTransY = other.mTransY;
+        mOrigWidth = other.mOrigWidth;
+        mOrigHeight = other.mOrigHeight;
+        mViewWidth = other.mViewWidth;
+        mViewHeight = other.mViewHeight;
+    }
+
+    /**
+     * sets this to the transform fraction of the way from start to end, 0 is start and 1 is end. a step
+     * between a fitted and a zoomed image can leave a gap at an edge, so it is pulled back inside
+     */
+    void interpolate(ImageTransform start, ImageTransform end, float fraction) {
+        set(end);
+        mSaveScale = start.mSaveScale + (end.mSaveScale - start.mSaveScale) * fraction;
+        mScale = start.mScale + (end.mScale - start.mScale) * fraction;
+        mTransX = start.mTransX + (end.mTransX - start.mTransX) * fraction;
+        mTransY = start.mTransY + (end.mTransY - start.mTransY) * fraction;
+        fixTranslation();
+    }
+
+    /**
+     * writes the transform into a 3x3 matrix in the order Matrix.setValues takes
+     */
+    void getValues(float[] values) {
+        values[0] = mScale;
+        values[1] = 0;
+        values[2] = mTransX;
+        values[3] = 0;
+        values[4] = mScale;
+        values[5] = mTransY;
+        values[6] = 0;
+        values[7] = 0;
+        values[8] = 1;
+    }
+
+    float getSaveScale() {
+        return mSaveScale;
+    }
+
+    float getTransX() {
+        return mTransX;
+    }
+
+    float getTransY() {
+        return mTransY;
+    }
+
+    float getContentWidth() {
+        return mOrigWidth * mSaveScale;
+    }
+
+    float getContentHeight() {
+        return mOrigHeight * mSaveScale;
+    }
+
+    float getViewWidth() {
+        return mViewWidth;
+    }
+
+    float getViewHeight() {
+        return mViewHeight;
+    }
+
+    /**
+     * @return the translation that brings trans back inside its bounds, 0 if it is inside
+     */
+    static float getFixTranslation(float trans, float viewSize, float contentSize) {
+        // min trans means -viewSize - contentSize up to 0 and maxtrans is 0 up to viewSize - ContentSize
+        float minTrans = getMinTranslation(viewSize, contentSize);
+        float maxTrans = getMaxTranslation(viewSize, contentSize);
+
+        if (trans < minTrans) { // negative x or y translation (down or to the right)
+            return -trans + minTrans;
+        }
+        if (trans > maxTrans) { // positive x or y translation (up or to the left)
+            return -trans + maxTrans;
+        }
+        return 0;
+    }
+
+    /**
+     * @return the lowest translation that keeps the image inside the view along one dimension
+     */
+    static float getMinTranslation(float viewSize, float contentSize) {
+        if (contentSize <= viewSize) { // case: NOT ZOOMED
+            return 0;
+        }
+        return viewSize - contentSize; //CASE: ZOOMED
+    }
+
+    /**
+     * @return the highest translation that keeps the image inside the view along one dimension
+     */
+    static float getMaxTranslation(float viewSize, float contentSize) {
+        if (contentSize <= viewSize) { // case: NOT ZOOMED
+            return viewSize - contentSize;
+        }
+        return 0; //CASE: ZOOMED
+    }
+
+    /**
+     * fun to decide whether or not to allow translation in  X or Y dir during a drag
+     * @param delta : trans mag i.e dx or dy
+     * @param viewSize : size of the View i.e View width or View height
+     * @param contentSize : original scaled width or height of image
+     */
+    static float getFixDragTrans(float delta, float viewSize, float contentSize) {
+        if (contentSize <= viewSize) {
+            return 0;
+        }
+        // exec only when if statement fails and that's image is occupying entire View
+        return delta;
+    }
+}
@@ -3,21 +3,28 @@ package com.neo.androidgesturespluralsight.customviews;
 
 import android.content.Context;
 import android.graphics.Matrix;
-import android.graphics.PointF;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+import android.view.animation.Interpolator;
+import android.widget.OverScroller;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 
 
 /**
- * custom ImageView class, that allows us to scale an ImageView
+ * custom ImageView class, that allows us to scale an ImageView.
+ * the math lives in ImageTransform, the touch path keeps no per event objects or log strings so
+ * pinching and panning make no garbage. a drag let go with some speed keeps going as a fling, run by
+ * an OverScroller and stepped once per frame from Choreographer. double tap zooms in on the tapped
+ * point, or back out to the whole image, animated the same way
  */
 public class ScalingImageView extends AppCompatImageView implements
         View.OnTouchListener,                 // to detect touch
@@ -25,6 +32,8 @@ public class ScalingImageView extends AppCompatImageView implements
         GestureDetector.OnDoubleTapListener {  // to det the double tap gesture
 
     private static final String TAG = "ScalingImageView";
+    private static final float DOUBLE_TAP_ZOOM = 2.5f;     // zoom a double tap goes to
+    private static final long ZOOM_DURATION_NANOS = 300 * 1000000L;
 
 
     //shared constructing
@@ -33,6 +42,7 @@ public class ScalingImageView extends AppCompatImageView implements
     GestureDetector mGestureDetector;
     Matrix mMatrix;     // matrix for scaling and translating image
     float[] mMatrixValues;    // array for getting keypoints in matrix reping image
+    final ImageTransform mTransform = new ImageTransform();     // what mMatrix is set from
 
     // Image States
     static final int NONE = 0;
@@ -40,18 +50,18 @@ public class ScalingImageView extends AppCompatImageView implements
     static final int ZOOM = 2;
     int mode = NONE;
 
-    // Scales
-    float mSaveScale = 1f;
-    float mMinScale = 1f;
-    float mMaxScale = 4f;
-
     // view dimensions
-    float origWidth, origHeight;
     int viewWidth, viewHeight;    // total Image View width and height
 
     // Tracks pos of image on Screen
-    PointF mLast = new PointF();   // holds last point where user pressed on
-    PointF mStart = new PointF();
+    float mLastX, mLastY;   // holds last point where user pressed on
+
+    // fling
+    OverScroller mScroller;
+    final FlingRunner mFlingRunner = new FlingRunner();
+
+    // double tap zoom
+    final ZoomRunner mZoomRunner = new ZoomRunner();
 
 
     public ScalingImageView(Context context) {
@@ -76,6 +86,8 @@ public class ScalingImageView extends AppCompatImageView implements
         // init gesture Detector
         mGestureDetector = new GestureDetector(context, this);
         setOnTouchListener(this);
+
+        mScroller = new OverScroller(context);
     }
 
 
@@ -83,40 +95,16 @@ public class ScalingImageView extends AppCompatImageView implements
 
         @Override
         public boolean onScaleBegin(ScaleGestureDetector detector) {  // called when we begin changing scale
+            mFlingRunner.stop();
+            mZoomRunner.stop();
             mode = ZOOM;
             return true;
         }
 
         @Override
         public boolean onScale(ScaleGestureDetector detector) {   // called anytime change is made to scaleFactor
-            Log.d(TAG, "onScale: " + detector.getScaleFactor());
-            float mScaleFactor = detector.getScaleFactor();                 // zoom ret val large than 1 and zoom out of orig image ret val less than 1
-            float prevScale = mSaveScale;                                   // saves scale val from previous scale to prevScale var
-            mSaveScale *= mScaleFactor;                                     // gets new scale value
-
-            // logic max sure scale is not larger than max scale or lower than min scale
-            if (mSaveScale > mMaxScale) {
-                mSaveScale = mMaxScale;
-                mScaleFactor = mMaxScale / prevScale;
-            } else if (mSaveScale < mMinScale) {
-                mSaveScale = mMinScale;
-                mScaleFactor = mMinScale / prevScale;
-            }
-
-            // logic for scaling the image
-            if (origWidth * mSaveScale <= viewWidth
-                    || origHeight * mSaveScale <= viewHeight) {               // image is not occupying entire view, scale from middle
-                mMatrix.postScale(mScaleFactor, mScaleFactor, viewWidth / 2,
-                        viewHeight / 2);
-                Log.d(TAG, "onScale: VIEW CENTER FOCUS");
-            } else {                                                          // image is occupying entireView and Scale from where user is pinching
-                mMatrix.postScale(mScaleFactor, mScaleFactor,
-                        detector.getFocusX(), detector.getFocusY());
-                Log.d(TAG, "onScale: VIEW ON PINCH FOCUS");
-            }
-
-
-            fixTranslation();
+            // zoom ret val large than 1 and zoom out of orig image ret val less than 1
+            mTransform.scale(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
             return true;
         }
     }
@@ -124,15 +112,11 @@ public class ScalingImageView extends AppCompatImageView implements
 
     /**
      * gets dim of drawable set to the ImageView and then scaling matrix accordingly
-     * inorder to fit imageView to the screen when imageView is double tapped
+     * inorder to fit imageView to the screen, without animating (double tap animates to the same place)
      */
     public void fitToScreen() {
-        mSaveScale = 1;      // resets scaleValue to 1
-
-        float scale;
         Drawable drawable = getDrawable();
-        if (drawable == null || drawable.getIntrinsicWidth() == 0
-                || drawable.getIntrinsicHeight() == 0)
+        if (!hasSize(drawable))
             return;
         // gets width and height of the image drawable
         int imageWidth = drawable.getIntrinsicWidth();
@@ -140,88 +124,23 @@ public class ScalingImageView extends AppCompatImageView implements
 
         Log.d(TAG, "imageWidth: " + imageWidth + " imageHeight : " + imageHeight);
 
-        float scaleX = (float) viewWidth / (float) imageWidth;
-        float scaleY = (float) viewHeight / (float) imageHeight;
-        scale = Math.min(scaleX, scaleY);   // gets the limiting factor i.e smallest of two scales
-        mMatrix.setScale(scale, scale);
-
-        // Center the image
-        float redundantYSpace = (float) viewHeight  // gets empty space in height dimension
-                - (scale * (float) imageHeight);
-        float redundantXSpace = (float) viewWidth   // gets empty space in X dir(will be zero since no space), since X is limiting factor
-                - (scale * (float) imageWidth);
-        redundantYSpace /= (float) 2;               // done for even distro of space on tp and bottom of View
-        redundantXSpace /= (float) 2;
-
-        Log.d(TAG, "fitToScreen: redundantXSpace: " + redundantXSpace);
-        Log.d(TAG, "fitToScreen: redundantYSpace: " + redundantYSpace);
-
-        mMatrix.postTranslate(redundantXSpace, redundantYSpace);
-
-        origWidth = viewWidth - 2 * redundantXSpace;  // sets actual width of the image
-        origHeight = viewHeight - 2 * redundantYSpace;  // sets actual height of image
-        setImageMatrix(mMatrix);
+        mFlingRunner.stop();
+        mZoomRunner.stop();
+        mTransform.fitToScreen(imageWidth, imageHeight);
+        updateImageMatrix();
     }
 
-
-
-    /*
-        ImageView Translation Correction Method, called after posting trans to matrix
-     */
-    void fixTranslation() {
-        mMatrix.getValues(mMatrixValues); //put matrix values into a float array(mMatrixValues) so we can analyze
-        float transX = mMatrixValues[Matrix.MTRANS_X]; //get the most recent translation in x direction
-        float transY = mMatrixValues[Matrix.MTRANS_Y]; //get the most recent translation in y direction
-
-        // ret 0 if trans doesn't meet boundary condition, i.e translation is valid
-        float fixTransX = getFixTranslation(transX, viewWidth, origWidth * mSaveScale);
-        float fixTransY = getFixTranslation(transY, viewHeight, origHeight * mSaveScale);
-
-        if (fixTransX != 0 || fixTransY != 0)
-            mMatrix.postTranslate(fixTransX, fixTransY);
+    private static boolean hasSize(Drawable drawable) {
+        return drawable != null && drawable.getIntrinsicWidth() != 0 && drawable.getIntrinsicHeight() != 0;
     }
 
-    float getFixTranslation(float trans, float viewSize, float contentSize) {
-        float minTrans, maxTrans;  // min trans means -viewSize - contentSize up to 0 and maxtrans is 0 up to viewSize - ContentSize
-
-        if (contentSize <= viewSize) { // case: NOT ZOOMED
-            minTrans = 0;
-            maxTrans = viewSize - contentSize;
-        } else { //CASE: ZOOMED
-            minTrans = viewSize - contentSize;
-            maxTrans = 0;
-        }
-
-        if (trans < minTrans) { // negative x or y translation (down or to the right)
-            // activated when we hit ImageView bounds to cancel out any other trans towards view bounds
-            // ret same trans but with opposite values of translation to counter it
-            Log.d(TAG, "getFixTranslation: minTrans: " + minTrans + ", trans: " + trans);
-            Log.d(TAG, "getFixTranslation: return: " + (-trans + minTrans));
-            return -trans + minTrans;
-        }
-
-        if (trans > maxTrans) { // positive x or y translation (up or to the left)
-            Log.d(TAG, "getFixTranslation: maxTrans: " + maxTrans + ", trans: " + trans);
-            Log.d(TAG, "getFixTranslation: return: " + (-trans + maxTrans));
-            return -trans + maxTrans;
-        }
-        return 0;
-    }
-
-
     /**
-     * fun to decide whether or not to allow translation in  X or Y dir during a drag
-     * @param delta : trans mag i.e dx or dy
-     * @param viewSize : size of the View i.e View width or View height
-     * @param contentSize : original scaled width or height of image
-     * @return
+     * sets the transform to the matrix and the matrix to the ImageView, nothing is allocated
      */
-    float getFixDragTrans(float delta, float viewSize, float contentSize) {
-        if (contentSize <= viewSize) {
-            return 0;
-        }
-        // exec only when if statement fails and that's image is occupying entire View
-        return delta;
+    void updateImageMatrix() {
+        mTransform.getValues(mMatrixValues);
+        mMatrix.setValues(mMatrixValues);
+        setImageMatrix(mMatrix);
     }
 
     @Override
@@ -230,8 +149,9 @@ public class ScalingImageView extends AppCompatImageView implements
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         viewWidth = MeasureSpec.getSize(widthMeasureSpec);
         viewHeight = MeasureSpec.getSize(heightMeasureSpec);
+        mTransform.setViewSize(viewWidth, viewHeight);
 
-        if (mSaveScale == 1) {
+        if (mTransform.getSaveScale() == 1) {
             // Fit to screen.(must be called here, since we want to set this before image is drawn to View)
             fitToScreen();
         }
@@ -243,42 +163,161 @@ public class ScalingImageView extends AppCompatImageView implements
      */
     @Override
     public boolean onTouch(View view, MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            // a new touch catches the image. before the detectors, the second tap of a double tap starts a zoom
+            mFlingRunner.stop();
+            mZoomRunner.stop();
+        }
         mScaleDetector.onTouchEvent(event);
         mGestureDetector.onTouchEvent(event);
 
-        PointF currentPoint = new PointF(event.getX(), event.getY());  // gets current user press pos
+        float x = event.getX();     // gets current user press pos
+        float y = event.getY();
 
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
-                mLast.set(currentPoint);
-                mStart.set(mLast);
+                mLastX = x;
+                mLastY = y;
                 mode = DRAG;
                 break;
             case MotionEvent.ACTION_MOVE:
                 if (mode == DRAG) {
                     // relative drag movement in X and Y dir respectively
-                    float dx = currentPoint.x - mLast.x;
-                    float dy = currentPoint.y - mLast.y;
-
-                    float fixTransX = getFixDragTrans(dx, viewWidth, origWidth * mSaveScale);
-                    Log.d(TAG, "onTouch: fixTransX: " + fixTransX);
-                    float fixTransY = getFixDragTrans(dy, viewHeight, origHeight * mSaveScale);
-                    Log.d(TAG, "onTouch: fixTransY: " + fixTransY);
-                    mMatrix.postTranslate(fixTransX, fixTransY);        // moves the image
-
-                    fixTranslation();
-
-                    mLast.set(currentPoint.x, currentPoint.y);
+                    mTransform.drag(x - mLastX, y - mLastY);        // moves the image
+                    mLastX = x;
+                    mLastY = y;
                 }
                 break;
             case MotionEvent.ACTION_POINTER_UP:
                 mode = NONE;
                 break;
         }
-        setImageMatrix(mMatrix);                    // post the changes made to the image
+        updateImageMatrix();                    // post the changes made to the image
         return false;
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        mFlingRunner.stop();
+        mZoomRunner.stop();
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * moves the image along the scroller's curve, one step per frame. the scroller works in whole
+     * pixels relative to where the fling started and is bounded to the translations getFixTranslation
+     * allows, each step is handed to the transform as a drag so it is clamped the same way
+     */
+    private class FlingRunner implements Choreographer.FrameCallback {
+
+        int mFlingX, mFlingY;     // scroller position at the last frame
+        boolean mRunning;
+
+        void start(float velocityX, float velocityY) {
+            stop();
+            float transX = mTransform.getTransX();
+            float transY = mTransform.getTransY();
+            float viewWidth = mTransform.getViewWidth();
+            float viewHeight = mTransform.getViewHeight();
+            float contentWidth = mTransform.getContentWidth();
+            float contentHeight = mTransform.getContentHeight();
+
+            mFlingX = 0;
+            mFlingY = 0;
+            mScroller.fling(0, 0, (int) velocityX, (int) velocityY,
+                    Math.round(ImageTransform.getMinTranslation(viewWidth, contentWidth) - transX),
+                    Math.round(ImageTransform.getMaxTranslation(viewWidth, contentWidth) - transX),
+                    Math.round(ImageTransform.getMinTranslation(viewHeight, contentHeight) - transY),
+                    Math.round(ImageTransform.getMaxTranslation(viewHeight, contentHeight) - transY));
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            if (mRunning) {
+                mRunning = false;
+                mScroller.forceFinished(true);
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (!mScroller.computeScrollOffset()) {
+                mRunning = false;
+                return;
+            }
+            int x = mScroller.getCurrX();
+            int y = mScroller.getCurrY();
+            mTransform.drag(x - mFlingX, y - mFlingY);
+            mFlingX = x;
+            mFlingY = y;
+            updateImageMatrix();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * animates the image between two transforms worked out up front, so a frame is an interpolation and
+     * one setImageMatrix. timed by the frame times so a dropped frame doesn't slow the zoom down
+     */
+    private class ZoomRunner implements Choreographer.FrameCallback {
+
+        final ImageTransform mStart = new ImageTransform();
+        final ImageTransform mEnd = new ImageTransform();
+        final Interpolator mInterpolator = new DecelerateInterpolator();
+        long mStartNanos;
+        boolean mRunning;
+
+        /**
+         * zooms in on the focus, or out to the whole image when already zoomed in
+         */
+        void start(float focusX, float focusY) {
+            Drawable drawable = getDrawable();
+            if (!hasSize(drawable)) {
+                return;
+            }
+            mFlingRunner.stop();
+            stop();
+            mStart.set(mTransform);
+            mEnd.set(mTransform);
+            if (mTransform.getSaveScale() > 1) {
+                mEnd.fitToScreen(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+            } else {
+                mEnd.zoomTo(DOUBLE_TAP_ZOOM, focusX, focusY);
+            }
+            mStartNanos = System.nanoTime();
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            if (mRunning) {
+                mRunning = false;
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            float fraction = (float) (frameTimeNanos - mStartNanos) / ZOOM_DURATION_NANOS;
+            if (fraction >= 1) {
+                mTransform.set(mEnd);
+                mRunning = false;
+            } else {
+                mTransform.interpolate(mStart, mEnd, mInterpolator.getInterpolation(Math.max(0, fraction)));
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+            updateImageMatrix();
+        }
+    }
+
     /*
         GestureListener
      */
@@ -309,7 +348,15 @@ public class ScalingImageView extends AppCompatImageView implements
 
     @Override
     public boolean onFling(MotionEvent motionEvent, MotionEvent motionEvent1, float v, float v1) {
-        return false;
+        if (mode != DRAG) {
+            return false;   // the end of a pinch, not a throw
+        }
+        if (mTransform.getContentWidth() <= mTransform.getViewWidth()
+                && mTransform.getContentHeight() <= mTransform.getViewHeight()) {
+            return false;   // nothing to move, the whole image is in view
+        }
+        mFlingRunner.start(v, v1);
+        return true;
     }
 
     /*
@@ -322,7 +369,7 @@ public class ScalingImageView extends AppCompatImageView implements
 
     @Override
     public boolean onDoubleTap(MotionEvent motionEvent) {
-        fitToScreen();
+        mZoomRunner.start(motionEvent.getX(), motionEvent.getY());
         return false;
     }
 
@@ -3,8 +3,6 @@ package com.neo.androidgesturespluralsight.models;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import java.math.BigDecimal;
-
 /**
  * Created by User on 3/3/2018.
  */
@@ -14,10 +12,10 @@ public class Product implements Parcelable{
     private String title;
     private int image;
     private String type;
-    private BigDecimal price;
+    private Money price;
     private int serial_number;
 
-    public Product(String title, int image, String type, BigDecimal price, int serial_number) {
+    public Product(String title, int image, String type, Money price, int serial_number) {
         this.title = title;
         this.image = image;
         this.type = type;
@@ -34,17 +32,13 @@ public class Product implements Parcelable{
     }
 
 
-    protected Product(Parcel in) {
-        title = in.readString();
-        image = in.readInt();
-        type = in.readString();
-        serial_number = in.readInt();
-    }
-
+    /**
+     * catalog products come back as the shared catalog instance, see ProductCodec
+     */
     public static final Creator<Product> CREATOR = new Creator<Product>() {
         @Override
         public Product createFromParcel(Parcel in) {
-            return new Product(in);
+            return ProductCodec.readFromParcel(in);
         }
 
         @Override
@@ -61,11 +55,11 @@ public class Product implements Parcelable{
         this.serial_number = serial_number;
     }
 
-    public BigDecimal getPrice() {
+    public Money getPrice() {
         return price;
     }
 
-    public void setPrice(BigDecimal price) {
+    public void setPrice(Money price) {
         this.price = price;
     }
 
@@ -101,9 +95,6 @@ public class Product implements Parcelable{
 
     @Override
     public void writeToParcel(Parcel parcel, int i) {
-        parcel.writeString(title);
-        parcel.writeInt(image);
-        parcel.writeString(type);
-        parcel.writeInt(serial_number);
+        ProductCodec.writeToParcel(this, parcel);
     }
 }
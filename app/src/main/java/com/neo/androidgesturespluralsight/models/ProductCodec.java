@@ -0,0 +1,247 @@
+package com.neo.androidgesturespluralsight.models;
+
+
+import android.os.Parcel;
+import android.util.Log;
+
+import java.nio.charset.Charset;
+
+/**
+ * wire format used when a Product goes into an Intent or a Bundle.
+ *
+ * a built in product that hasn't been changed is written as a reference, just its serial number,
+ * and read back as the catalog instance itself so nothing is decoded on the other side.
+ * anything else (cart headers, modified copies) falls back to a complete compact encoding: varint
+ * serial, image and price in cents, then UTF-8 type and title.
+ *
+ * the built in products live in resources, which registers them through setCatalog so this
+ * package doesn't depend on it at compile time. the first lookup loads that class if nothing has
+ * yet, so a restored process resolves references no matter which class it touched first.
+ */
+public final class ProductCodec {
+
+    private static final String TAG = "ProductCodec";
+
+    static final int TAG_REFERENCE = 1;
+    static final int TAG_ENCODED = 2;
+
+    // registers the built in products from its static initializer
+    static final String CATALOG_CLASS = "com.neo.androidgesturespluralsight.resources.Products";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * the built in products, the ones that read back identical in any process
+     */
+    public interface Catalog {
+        /**
+         * @return the built in product with the given serial number, or null
+         */
+        Product builtInBySerial(int serialNumber);
+    }
+
+    private static volatile Catalog sCatalog;
+
+    private ProductCodec() {
+    }
+
+
+    public static void setCatalog(Catalog catalog) {
+        sCatalog = catalog;
+    }
+
+    public static void writeToParcel(Product product, Parcel parcel) {
+        if (isReference(product, catalog())) {
+            parcel.writeInt(TAG_REFERENCE);
+            parcel.writeInt(product.getSerial_number());
+        } else {
+            parcel.writeInt(TAG_ENCODED);
+            parcel.writeByteArray(encode(product));
+        }
+    }
+
+    /**
+     * @return the product, or null for a reference to a product this build doesn't have
+     */
+    public static Product readFromParcel(Parcel parcel) {
+        int tag = parcel.readInt();
+        switch (tag) {
+            case TAG_REFERENCE:
+                return resolve(parcel.readInt(), catalog());
+            case TAG_ENCODED:
+                return decode(parcel.createByteArray());
+            default:
+                throw new IllegalArgumentException("unknown product encoding: " + tag);
+        }
+    }
+
+    /**
+     * the writer only sends references to built in products, so this only misses when the parcel
+     * was written by another build of the app. the item is dropped rather than failing the read
+     */
+    static Product resolve(int serialNumber, Catalog catalog) {
+        Product product = catalog.builtInBySerial(serialNumber);
+        if (product == null) {
+            Log.w(TAG, "resolve: no built in product " + serialNumber + ", dropping it");
+        }
+        return product;
+    }
+
+    /**
+     * @return the registered catalog, loading the class that registers it if needed
+     */
+    static Catalog catalog() {
+        Catalog catalog = sCatalog;
+        if (catalog == null) {
+            try {
+                Class.forName(CATALOG_CLASS, true, ProductCodec.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("missing product catalog " + CATALOG_CLASS, e);
+            }
+            catalog = sCatalog;
+            if (catalog == null) {
+                throw new IllegalStateException(CATALOG_CLASS + " didn't register a catalog");
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * @return true if the product can be sent as its serial number, i.e. it reads back identical in any process
+     */
+    static boolean isReference(Product product, Catalog catalog) {
+        Product canonical = catalog.builtInBySerial(product.getSerial_number());
+        if (canonical == product) {
+            return true;
+        }
+        return canonical != null
+                && canonical.getImage() == product.getImage()
+                && canonical.getTitle().equals(product.getTitle())
+                && canonical.getType().equals(product.getType())
+                && canonical.getPrice().equals(product.getPrice());
+    }
+
+    /**
+     * complete encoding of the product, price included
+     */
+    public static byte[] encode(Product product) {
+        byte[] title = product.getTitle().getBytes(UTF_8);
+        byte[] type = product.getType().getBytes(UTF_8);
+        long price = product.getPrice() == null ? 0 : product.getPrice().getCents();
+
+        int serial = zigZag(product.getSerial_number());
+        int image = zigZag(product.getImage());
+        long cents = zigZag(price);
+        byte[] out = new byte[varIntSize(serial) + varIntSize(image) + varLongSize(cents)
+                + varIntSize(type.length) + type.length + varIntSize(title.length) + title.length];
+
+        int pos = writeVarLong(out, 0, serial & 0xFFFFFFFFL);
+        pos = writeVarLong(out, pos, image & 0xFFFFFFFFL);
+        pos = writeVarLong(out, pos, cents);
+        pos = writeBytes(out, pos, type);
+        writeBytes(out, pos, title);
+        return out;
+    }
+
+    public static Product decode(byte[] data) {
+        return decode(data, catalog());
+    }
+
+    static Product decode(byte[] data, Catalog catalog) {
+        Reader reader = new Reader(data);
+        int serialNumber = unZigZag((int) reader.readVarLong());
+        int image = unZigZag((int) reader.readVarLong());
+        long cents = unZigZag(reader.readVarLong());
+        String type = reader.readString();
+        String title = reader.readString();
+
+        // prefer the shared type string of the catalog over a fresh copy per product
+        Product canonical = catalog.builtInBySerial(serialNumber);
+        if (canonical != null && canonical.getType().equals(type)) {
+            type = canonical.getType();
+        }
+        return new Product(title, image, type, Money.ofCents(cents), serialNumber);
+    }
+
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varIntSize(int value) {
+        return varLongSize(value & 0xFFFFFFFFL);
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarLong(byte[] out, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int writeBytes(byte[] out, int pos, byte[] bytes) {
+        pos = writeVarLong(out, pos, bytes.length);
+        System.arraycopy(bytes, 0, out, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+
+    private static final class Reader {
+
+        private final byte[] mData;
+        private int mPos;
+
+        Reader(byte[] data) {
+            mData = data;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (mPos >= mData.length || shift > 63) {
+                    throw new IllegalArgumentException("malformed product encoding");
+                }
+                byte b = mData[mPos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length < 0 || length > mData.length - mPos) {
+                throw new IllegalArgumentException("malformed product encoding");
+            }
+            String value = new String(mData, mPos, (int) length, UTF_8);
+            mPos += (int) length;
+            return value;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.neo.androidgesturespluralsight.resources;
 
+import com.neo.androidgesturespluralsight.models.Money;
+import com.neo.androidgesturespluralsight.models.Product;
+
 /**
  * Created by User on 3/6/2018.
  */
@@ -7,4 +10,26 @@ package com.neo.androidgesturespluralsight.resources;
 public class ProductHeaders {
 
     public static final String[] HEADER_TITLES = {"Must Have", "Maybe", "Probably Not"};
+
+    /**
+     * section headers in the cart list are Products with an empty type. they get negative serial
+     * numbers so their ids never collide with a real product's
+     */
+    public static Product newHeader(int section){
+        return new Product(HEADER_TITLES[section], 0, "", Money.ZERO, serialOf(section));
+    }
+
+    /**
+     * @return serial number of the section's header
+     */
+    public static int serialOf(int section){
+        return -(section + 1);
+    }
+
+    /**
+     * @return index of the section the header product was created for
+     */
+    public static int sectionOf(Product header){
+        return -header.getSerial_number() - 1;
+    }
 }
@@ -0,0 +1,91 @@
+package com.neo.androidgesturespluralsight.resources;
+
+
+import com.neo.androidgesturespluralsight.models.Product;
+
+/**
+ * immutable serial number -> Product index, uses open addressing on a primitive int key table
+ * so lookups don't box the key or build a String for it
+ */
+public final class ProductIndex {
+
+    private static final int EMPTY = 0;     // serial numbers are positive, so 0 marks a free slot
+
+    private final int[] mKeys;
+    private final Product[] mValues;
+    private final int mMask;
+    private final int mSize;
+
+
+    private ProductIndex(int[] keys, Product[] values, int size) {
+        mKeys = keys;
+        mValues = values;
+        mMask = keys.length - 1;
+        mSize = size;
+    }
+
+    /**
+     * builds the index from the given product arrays, later duplicates of a serial replace earlier ones
+     * @param groups : arrays of products to be indexed
+     */
+    public static ProductIndex of(Product[]... groups) {
+        int count = 0;
+        for (Product[] group : groups) {
+            count += group.length;
+        }
+
+        // keep load factor at or below 0.5 so probe chains stay short
+        int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+        int[] keys = new int[capacity];
+        Product[] values = new Product[capacity];
+        int mask = capacity - 1;
+        int size = 0;
+
+        for (Product[] group : groups) {
+            for (Product product : group) {
+                int serial = product.getSerial_number();
+                if (serial == EMPTY) {
+                    throw new IllegalArgumentException("serial number 0 is reserved: " + product.getTitle());
+                }
+                int slot = mix(serial) & mask;
+                while (keys[slot] != EMPTY && keys[slot] != serial) {
+                    slot = (slot + 1) & mask;   // linear probing
+                }
+                if (keys[slot] == EMPTY) {
+                    size++;
+                }
+                keys[slot] = serial;
+                values[slot] = product;
+            }
+        }
+        return new ProductIndex(keys, values, size);
+    }
+
+    /**
+     * @return product with the given serial number or null if not in the index
+     */
+    public Product get(int serial) {
+        if (serial == EMPTY) {
+            return null;
+        }
+        int slot = mix(serial) & mMask;
+        int key;
+        while ((key = mKeys[slot]) != EMPTY) {
+            if (key == serial) {
+                return mValues[slot];
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    // scrambles the serial bits since serials in a catalog tend to be sequential
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,238 @@
+package com.neo.androidgesturespluralsight.resources;
+
+
+import com.neo.androidgesturespluralsight.models.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * immutable prefix search index over product titles and types.
+ *
+ * every word of a title or type becomes a lower case token, tokens are kept in one sorted array
+ * and each token has a sorted posting list of the products that contain it. a query word matches
+ * every token it is a prefix of, so "hoo" finds all hoodies, and a product has to match every
+ * word of the query. queries only touch preallocated arrays, the result list is the only garbage.
+ */
+public final class ProductSearchIndex {
+
+    private final Product[] mProducts;
+    private final char[][] mTokens;       // sorted, lower case
+    private final int[][] mPostings;      // product positions for each token, ascending
+
+    // query scratch space, a product matched all words seen so far when its mark equals the stamp
+    private final int[] mMarks;
+    private int mStamp;
+
+
+    private ProductSearchIndex(Product[] products, char[][] tokens, int[][] postings) {
+        mProducts = products;
+        mTokens = tokens;
+        mPostings = postings;
+        mMarks = new int[products.length];
+    }
+
+    public static ProductSearchIndex of(Product[]... groups) {
+        int total = 0;
+        for (Product[] group : groups) {
+            total += group.length;
+        }
+        Product[] products = new Product[total];
+        int position = 0;
+        for (Product[] group : groups) {
+            System.arraycopy(group, 0, products, position, group.length);
+            position += group.length;
+        }
+
+        // token -> positions of the products that contain it, only used while building
+        HashMap<String, int[]> postings = new HashMap<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < products.length; i++) {
+            addTokens(products[i].getTitle(), i, word, postings);
+            addTokens(products[i].getType(), i, word, postings);
+        }
+
+        String[] sortedTokens = postings.keySet().toArray(new String[0]);
+        Arrays.sort(sortedTokens);
+        char[][] tokens = new char[sortedTokens.length][];
+        int[][] lists = new int[sortedTokens.length][];
+        for (int i = 0; i < sortedTokens.length; i++) {
+            tokens[i] = sortedTokens[i].toCharArray();
+            int[] list = postings.get(sortedTokens[i]);
+            lists[i] = Arrays.copyOf(list, list[0] + 1);     // drop unused capacity
+        }
+        return new ProductSearchIndex(products, tokens, lists);
+    }
+
+    /**
+     * finds products matching every word of the query, in catalog order
+     * @param query : words separated by anything that isn't a letter or digit, case is ignored
+     * @param limit : max number of results to add
+     * @param results : matches are appended to this list
+     * @return number of matches added
+     */
+    public synchronized int search(CharSequence query, int limit, List<Product> results) {
+        int words = countWords(query);
+        if (words == 0 || limit <= 0) {
+            return 0;
+        }
+        if (mStamp > Integer.MAX_VALUE - words - 1) {
+            Arrays.fill(mMarks, 0);
+            mStamp = 0;
+        }
+        int base = mStamp;
+        mStamp += words;
+
+        // mark products matching each word in turn, a product survives only if it matched the last word
+        int word = 0;
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(query.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            int first = lowerBound(query, start, i);
+            int last = upperBound(query, start, i);
+            if (first == last) {
+                return 0;       // no token starts with this word, so nothing can match
+            }
+            int previous = base + word;
+            int current = previous + 1;
+            for (int t = first; t < last; t++) {
+                int[] list = mPostings[t];
+                for (int p = 1, n = list[0]; p <= n; p++) {
+                    int product = list[p];
+                    if (word == 0 ? mMarks[product] <= base : mMarks[product] == previous) {
+                        mMarks[product] = current;
+                    }
+                }
+            }
+            word++;
+        }
+
+        int matchStamp = base + words;
+        int added = 0;
+        for (int p = 0; p < mProducts.length && added < limit; p++) {
+            if (mMarks[p] == matchStamp) {
+                results.add(mProducts[p]);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    public int size() {
+        return mProducts.length;
+    }
+
+    // first token that is >= the word
+    private int lowerBound(CharSequence query, int start, int end) {
+        int low = 0;
+        int high = mTokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mTokens[mid], query, start, end, false) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // first token after the last token that starts with the word
+    private int upperBound(CharSequence query, int start, int end) {
+        int low = 0;
+        int high = mTokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mTokens[mid], query, start, end, true) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * compares a token with query[start, end) lower cased
+     * @param prefix : when true a token that starts with the word compares as equal
+     */
+    private static int compare(char[] token, CharSequence query, int start, int end, boolean prefix) {
+        int length = end - start;
+        int n = Math.min(token.length, length);
+        for (int i = 0; i < n; i++) {
+            char c = Character.toLowerCase(query.charAt(start + i));
+            if (token[i] != c) {
+                return token[i] < c ? -1 : 1;
+            }
+        }
+        if (prefix && token.length >= length) {
+            return 0;
+        }
+        return Integer.compare(token.length, length);
+    }
+
+    private static int countWords(CharSequence query) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0, n = query.length(); i < n; i++) {
+            boolean letter = Character.isLetterOrDigit(query.charAt(i));
+            if (letter && !inWord) {
+                words++;
+            }
+            inWord = letter;
+        }
+        return words;
+    }
+
+    // appends the product position to the posting list of every word in the text
+    private static void addTokens(String text, int position, StringBuilder word, Map<String, int[]> postings) {
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                continue;
+            }
+            if (word.length() > 0) {
+                String token = word.toString();
+                word.setLength(0);
+                // list[0] holds the number of positions in use
+                int[] list = postings.get(token);
+                if (list == null) {
+                    list = new int[4];
+                    postings.put(token, list);
+                }
+                if (list[list[0]] == position && list[0] > 0) {
+                    continue;       // word repeated in the same product
+                }
+                if (list[0] + 1 == list.length) {
+                    list = Arrays.copyOf(list, list.length * 2);
+                    postings.put(token, list);
+                }
+                list[++list[0]] = position;
+            }
+        }
+    }
+
+    /**
+     * convenience for callers that want a fresh result list
+     */
+    public List<Product> search(CharSequence query, int limit) {
+        ArrayList<Product> results = new ArrayList<>();
+        search(query, limit, results);
+        return results;
+    }
+}
@@ -0,0 +1,116 @@
+package com.neo.androidgesturespluralsight.resources;
+
+
+import com.neo.androidgesturespluralsight.models.Product;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * immutable product type -> variations index. products are stored in one array partitioned by type,
+ * so the variations of a type are a contiguous range and each range is exposed as a read only list
+ * that is created once when the index is built
+ */
+public final class ProductTypeIndex {
+
+    private final Product[] mProducts;          // all products, grouped by type
+    private final int[] mRangeStarts;           // start of each type's range, last entry is mProducts.length
+    private final HashMap<String, Integer> mTypeIds;
+    private final List<Product>[] mVariants;
+
+
+    @SuppressWarnings("unchecked")
+    private ProductTypeIndex(Product[] products, int[] rangeStarts, HashMap<String, Integer> typeIds) {
+        mProducts = products;
+        mRangeStarts = rangeStarts;
+        mTypeIds = typeIds;
+        mVariants = new List[typeIds.size()];
+        List<Product> all = Arrays.asList(products);
+        for (int typeId = 0; typeId < mVariants.length; typeId++) {
+            mVariants[typeId] = Collections.unmodifiableList(
+                    all.subList(rangeStarts[typeId], rangeStarts[typeId + 1]));
+        }
+    }
+
+    /**
+     * builds the index, types are numbered in the order they are first seen and the variations
+     * of a type keep the order they are given in
+     */
+    public static ProductTypeIndex of(Product[]... groups) {
+        HashMap<String, Integer> typeIds = new HashMap<>();
+        int[] counts = new int[8];
+        int total = 0;
+
+        // first pass: number the types and count the variations of each
+        for (Product[] group : groups) {
+            for (Product product : group) {
+                Integer typeId = typeIds.get(product.getType());
+                if (typeId == null) {
+                    typeId = typeIds.size();
+                    typeIds.put(product.getType(), typeId);
+                    if (typeId == counts.length) {
+                        counts = Arrays.copyOf(counts, typeId * 2);
+                    }
+                }
+                counts[typeId]++;
+                total++;
+            }
+        }
+
+        int typeCount = typeIds.size();
+        int[] rangeStarts = new int[typeCount + 1];
+        for (int typeId = 0; typeId < typeCount; typeId++) {
+            rangeStarts[typeId + 1] = rangeStarts[typeId] + counts[typeId];
+        }
+
+        // second pass: place every product in its type's range
+        Product[] products = new Product[total];
+        int[] next = Arrays.copyOf(rangeStarts, typeCount);
+        for (Product[] group : groups) {
+            for (Product product : group) {
+                products[next[typeIds.get(product.getType())]++] = product;
+            }
+        }
+        return new ProductTypeIndex(products, rangeStarts, typeIds);
+    }
+
+    /**
+     * @return id of the type or -1 if no product has that type
+     */
+    public int typeId(String type) {
+        Integer typeId = mTypeIds.get(type);
+        return typeId == null ? -1 : typeId;
+    }
+
+    public int typeCount() {
+        return mVariants.length;
+    }
+
+    /**
+     * @return read only list of every variation of the type, empty if the type is unknown
+     */
+    public List<Product> variantsOf(String type) {
+        int typeId = typeId(type);
+        if (typeId < 0) {
+            return Collections.emptyList();
+        }
+        return mVariants[typeId];
+    }
+
+    public List<Product> variantsOf(int typeId) {
+        return mVariants[typeId];
+    }
+
+    public int size() {
+        return mProducts.length;
+    }
+
+    /**
+     * @return product at the given position in the type partitioned order
+     */
+    public Product get(int position) {
+        return mProducts[position];
+    }
+}
@@ -2,12 +2,11 @@ package com.neo.androidgesturespluralsight.resources;
 
 
 import com.neo.androidgesturespluralsight.R;
+import com.neo.androidgesturespluralsight.models.Money;
 import com.neo.androidgesturespluralsight.models.Product;
+import com.neo.androidgesturespluralsight.models.ProductCodec;
 
-import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 
 /**
  * Created by User on 3/3/2018.
@@ -15,97 +14,112 @@ import java.util.Map;
 
 public class Products {
 
-    public HashMap<String, Product[]> PRODUCT_MAP = new HashMap<>();
-
-    public Products() {
-        PRODUCT_MAP.put("Phone Case", PHONE_CASES);
-        PRODUCT_MAP.put("Hoody", HOODIES);
-        PRODUCT_MAP.put("Mug", MUGS);
-        PRODUCT_MAP.put("T-Shirt", T_SHIRTS);
-        PRODUCT_MAP.put("Half-Sleeve Shirt", HALF_SLEEVES);
-        PRODUCT_MAP.put("Snapback", SNAPBACKS);
-        PRODUCT_MAP.put("Tank", TANKS);
-        PRODUCT_MAP.put("Trucker Hat", TRUCKER_HATS);
+    private Products() {
+        // static catalog, not instantiated
     }
 
 
-    public static HashMap<String, Product> getProducts(){
-        return  PRODUCTS;
+    /**
+     * @return product with the given serial number, or null if it isn't in the catalog
+     */
+    public static Product bySerial(int serialNumber){
+        return SerialIndexHolder.INDEX.get(serialNumber);
+    }
+
+    /**
+     * @return the built in product with the given serial number, these resolve the same in every process
+     */
+    static Product builtInBySerial(int serialNumber){
+        return SerialIndexHolder.INDEX.get(serialNumber);
+    }
+
+    /**
+     * @return read only list of every variation of the product type, shared by all callers
+     */
+    public static List<Product> variantsOf(String type){
+        return TypeIndexHolder.INDEX.variantsOf(type);
+    }
+
+    /**
+     * @return process wide search index over the titles and types of the built in products
+     */
+    public static ProductSearchIndex searchIndex(){
+        return SearchIndexHolder.INDEX;
     }
 
     public static final Product CELL_PHONE_CASE_1 = new Product("Cell Phone Case 1", R.drawable.cell_phone_case_1, "Phone Case",
-            new BigDecimal(10.99), 1515611);
+            Money.ofCents(1099), 1515611);
     public static final Product CELL_PHONE_CASE_2 = new Product("Cell Phone Case 2", R.drawable.cell_phone_case_2, "Phone Case",
-            new BigDecimal(11.99), 1515612);
+            Money.ofCents(1199), 1515612);
 
-    public static final Product HOODY_NAVY = new Product("Navy Hoody", R.drawable.hoody_navy, "Hoody", new BigDecimal(34.99)
+    public static final Product HOODY_NAVY = new Product("Navy Hoody", R.drawable.hoody_navy, "Hoody", Money.ofCents(3499)
             , 7725277);
     public static final Product HOODY_ASPHALT = new Product("Asphalt Hoody", R.drawable.hoody_asphalt, "Hoody",
-            new BigDecimal(34.99), 7725278);
+            Money.ofCents(3499), 7725278);
     public static final Product HOODY_BLACK = new Product("Black Hoody", R.drawable.hoody_black, "Hoody",
-            new BigDecimal(34.99), 7725279);
+            Money.ofCents(3499), 7725279);
     public static final Product HOODY_GREY = new Product("Grey Hoody", R.drawable.hoody_grey, "Hoody",
-            new BigDecimal(34.99), 7725280);
+            Money.ofCents(3499), 7725280);
     public static final Product HOODY_PURPLE = new Product("Purple Hoody", R.drawable.hoody_purple, "Hoody",
-            new BigDecimal(34.99), 7725281);
+            Money.ofCents(3499), 7725281);
 
     public static final Product MUG_11OZ = new Product("Mug (11 oz)", R.drawable.mug_11oz, "Mug",
-            new BigDecimal(13.99), 7725282);
+            Money.ofCents(1399), 7725282);
     public static final Product MUG_15OZ = new Product("Mug (15 oz)", R.drawable.mug_15oz, "Mug",
-            new BigDecimal(14.99), 7725283);
+            Money.ofCents(1499), 7725283);
 
     public static final Product T_SHIRT_WHITE = new Product("White T-Shirt", R.drawable.t_shirt_white, "T-Shirt",
-            new BigDecimal(23.99), 2141515);
+            Money.ofCents(2399), 2141515);
     public static final Product T_SHIRT_BLACK = new Product("Black T-Shirt", R.drawable.t_shirt_black, "T-Shirt",
-            new BigDecimal(23.99), 2141516);
+            Money.ofCents(2399), 2141516);
     public static final Product T_SHIRT_GREY = new Product("Grey T-Shirt", R.drawable.t_shirt_grey, "T-Shirt",
-            new BigDecimal(23.99), 2141517);
+            Money.ofCents(2399), 2141517);
     public static final Product T_SHIRT_NAVY = new Product("Navy T-Shirt", R.drawable.t_shirt_navy, "T-Shirt",
-            new BigDecimal(23.99), 2141518);
+            Money.ofCents(2399), 2141518);
     public static final Product T_SHIRT_RED = new Product("Red T-Shirt", R.drawable.t_shirt_red, "T-Shirt",
-            new BigDecimal(23.99), 2141519);
+            Money.ofCents(2399), 2141519);
 
     public static final Product HALF_SLEEVE_GREY = new Product("Grey Half-Sleeve Shirt", R.drawable.half_sleeve_shirt_grey,
-            "Half-Sleeve Shirt", new BigDecimal(28.99), 9704833);
+            "Half-Sleeve Shirt", Money.ofCents(2899), 9704833);
     public static final Product HALF_SLEEVE_BLUE = new Product("Blue Half-Sleeve Shirt", R.drawable.half_sleeve_shirt_blue,
-            "Half-Sleeve Shirt", new BigDecimal(28.99), 9704834);
+            "Half-Sleeve Shirt", Money.ofCents(2899), 9704834);
     public static final Product HALF_SLEEVE_WHITE = new Product("White Half-Sleeve Shirt", R.drawable.half_sleeve_shirt_white,
-            "Half-Sleeve Shirt", new BigDecimal(28.99), 9704835);
+            "Half-Sleeve Shirt", Money.ofCents(2899), 9704835);
     public static final Product HALF_SLEEVE_RED = new Product("Red Half-Sleeve Shirt", R.drawable.half_sleeve_shirt_red,
-            "Half-Sleeve Shirt", new BigDecimal(28.99), 9704836);
+            "Half-Sleeve Shirt", Money.ofCents(2899), 9704836);
 
     public static final Product SNAPBACK_BLACK = new Product("Black Snapback", R.drawable.snapback_black,
-            "Snapback", new BigDecimal(20.99), 9377376);
+            "Snapback", Money.ofCents(2099), 9377376);
     public static final Product SNAPBACK_CAMO = new Product("Camo Snapback", R.drawable.snapback_camo,
-            "Snapback", new BigDecimal(20.99), 9377377);
+            "Snapback", Money.ofCents(2099), 9377377);
     public static final Product SNAPBACK_GREY = new Product("Grey Snapback", R.drawable.snapback_grey,
-            "Snapback", new BigDecimal(20.99), 9377378);
+            "Snapback", Money.ofCents(2099), 9377378);
     public static final Product SNAPBACK_NAVY = new Product("Navy Snapback", R.drawable.snapback_navy,
-            "Snapback", new BigDecimal(20.99), 9377379);
+            "Snapback", Money.ofCents(2099), 9377379);
     public static final Product SNAPBACK_RED = new Product("Red Snapback", R.drawable.snapback_red,
-            "Snapback", new BigDecimal(20.99), 9377380);
+            "Snapback", Money.ofCents(2099), 9377380);
     public static final Product SNAPBACK_TEAL = new Product("Teal Snapback", R.drawable.snapback_teal,
-            "Snapback", new BigDecimal(20.99), 9377381);
+            "Snapback", Money.ofCents(2099), 9377381);
 
     public static final Product TANK_WHITE = new Product("White Tank", R.drawable.tank_white, "Tank"
-            , new BigDecimal(19.99), 6626622);
+            , Money.ofCents(1999), 6626622);
     public static final Product TANK_BLACK = new Product("Black Tank", R.drawable.tank_black, "Tank"
-            , new BigDecimal(19.99), 6626623);
+            , Money.ofCents(1999), 6626623);
     public static final Product TANK_GREY = new Product("Grey Tank", R.drawable.tank_grey, "Tank"
-            , new BigDecimal(19.99), 6626624);
+            , Money.ofCents(1999), 6626624);
     public static final Product TANK_LIGHT_BLUE = new Product("Light Blue Tank", R.drawable.tank_light_blue, "Tank"
-            , new BigDecimal(19.99), 6626625);
+            , Money.ofCents(1999), 6626625);
     public static final Product TANK_NAVY = new Product("Navy Tank", R.drawable.tank_navy, "Tank"
-            , new BigDecimal(19.99), 6626626);
+            , Money.ofCents(1999), 6626626);
 
     public static final Product TRUCKER_HAT_NAVY = new Product("Navy Trucker Hat", R.drawable.trucker_hat_navy,
-            "Trucker Hat", new BigDecimal(25.99), 783736);
+            "Trucker Hat", Money.ofCents(2599), 783736);
     public static final Product TRUCKER_HAT_WHITE = new Product("White Trucker Hat", R.drawable.trucker_hat_white,
-            "Trucker Hat", new BigDecimal(25.99), 783737);
+            "Trucker Hat", Money.ofCents(2599), 783737);
     public static final Product TRUCKER_HAT_BLACK = new Product("Black Trucker Hat", R.drawable.trucker_hat_black,
-            "Trucker Hat", new BigDecimal(25.99), 783738);
+            "Trucker Hat", Money.ofCents(2599), 783738);
     public static final Product TRUCKER_HAT_BAIGE = new Product("Baige Trucker Hat", R.drawable.trucker_hat_baige,
-            "Trucker Hat", new BigDecimal(25.99), 783739);
+            "Trucker Hat", Money.ofCents(2599), 783739);
 
     public static final Product[] T_SHIRTS = {T_SHIRT_WHITE, T_SHIRT_BLACK, T_SHIRT_GREY, T_SHIRT_NAVY, T_SHIRT_RED};
 
@@ -128,20 +142,39 @@ public class Products {
             HALF_SLEEVE_BLUE};
 
 
-    private static final HashMap<String, Product> PRODUCTS;
-    static
-    {
-        PRODUCTS = new HashMap<String, Product>();
-        Products products = new Products();
-        Iterator it = products.PRODUCT_MAP.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry pair = (Map.Entry)it.next();
-            System.out.println(pair.getKey() + " = " + pair.getValue());
-            for(Product product : (Product[])pair.getValue()){
-                PRODUCTS.put(String.valueOf(product.getSerial_number()), product);
+    static {
+        // parcelled catalog products read back as these instances, see ProductCodec
+        ProductCodec.setCatalog(new ProductCodec.Catalog() {
+            @Override
+            public Product builtInBySerial(int serialNumber) {
+                return Products.builtInBySerial(serialNumber);
             }
-            it.remove(); // avoids a ConcurrentModificationException
-        }
+        });
+    }
+
+    /**
+     * serial number lookup table for every built in product, the holder class keeps it from being
+     * built until the first lookup instead of when the catalog class is first touched
+     */
+    private static class SerialIndexHolder {
+        static final ProductIndex INDEX = ProductIndex.of(PHONE_CASES, HOODIES, MUGS, T_SHIRTS,
+                HALF_SLEEVES, SNAPBACKS, TANKS, TRUCKER_HATS);
+    }
+
+    /**
+     * process wide type -> variations index, built once on first use
+     */
+    private static class TypeIndexHolder {
+        static final ProductTypeIndex INDEX = ProductTypeIndex.of(PHONE_CASES, HOODIES, MUGS, T_SHIRTS,
+                HALF_SLEEVES, SNAPBACKS, TANKS, TRUCKER_HATS);
+    }
+
+    /**
+     * search index, built the first time the user searches
+     */
+    private static class SearchIndexHolder {
+        static final ProductSearchIndex INDEX = ProductSearchIndex.of(PHONE_CASES, HOODIES, MUGS, T_SHIRTS,
+                HALF_SLEEVES, SNAPBACKS, TANKS, TRUCKER_HATS);
     }
 
 
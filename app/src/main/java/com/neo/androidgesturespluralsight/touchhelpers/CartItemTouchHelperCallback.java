@@ -65,6 +65,12 @@ public class CartItemTouchHelperCallback extends ItemTouchHelper.Callback {
         mAdapter.onItemSwiped(viewHolder.getAdapterPosition());
     }
 
+    @Override
+    public boolean canDropOver(RecyclerView recyclerView, RecyclerView.ViewHolder current, RecyclerView.ViewHolder target) {
+        // every item has to stay under a section header, so nothing can go above the first one
+        return target.getAdapterPosition() > 0;
+    }
+
     @Override
     public boolean onMove(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder, RecyclerView.ViewHolder target) {
         // called when an item is moved in the rv
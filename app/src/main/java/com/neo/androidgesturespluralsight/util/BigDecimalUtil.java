@@ -1,19 +1,203 @@
 package com.neo.androidgesturespluralsight.util;
 
+import com.neo.androidgesturespluralsight.models.Money;
+
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
 
 
 /**
  * Created by User on 2/6/2018.
+ *
+ * price formatting, output matches DecimalFormat("###,###,###.00") for the default locale.
+ * Money values are formatted by hand into a char buffer and the resulting text is kept in a small
+ * cache keyed by amount, catalog prices repeat a lot so binds during a scroll hit the cache and
+ * allocate nothing. separators, digits, the negative prefix and the cache are per locale, so a
+ * locale change at runtime is picked up on the next call.
  */
-
 public class BigDecimalUtil {
 
+    private static final String PATTERN = "###,###,###.00";
+
+    // longest possible output: 19 digits, 6 group separators, decimal separator and the negative affixes
+    static final int MAX_LENGTH = 32;
+    private static final int MAX_AFFIX_LENGTH = MAX_LENGTH - 26;     // no locale needs more than 3
+
+    private static final int CACHE_SIZE = 256;      // power of 2
+
+    // symbols per locale, the last one used is checked first so the warm path doesn't touch the map
+    private static final HashMap<Locale, LocaleFormat> FORMATS = new HashMap<>();
+    private static volatile LocaleFormat sLastFormat;
+
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[MAX_LENGTH];
+        }
+    };
+
+
     public static String getValue(BigDecimal value){
-        DecimalFormat df = new DecimalFormat("###,###,###.00");
-        return String.valueOf(df.format(value));
+        return getValue(value, Locale.getDefault());
+    }
+
+    public static String getValue(BigDecimal value, Locale locale){
+        return formatFor(locale).decimalFormat.get().format(value);
+    }
+
+    /**
+     * @return formatted price, cached so repeated amounts return the same String
+     */
+    public static String getValue(Money value){
+        return getValue(value, Locale.getDefault());
+    }
+
+    public static String getValue(Money value, Locale locale){
+        LocaleFormat format = formatFor(locale);
+        long cents = value.getCents();
+        int slot = slot(cents);
+        CacheEntry entry = format.cache[slot];
+        if(entry != null && entry.cents == cents){
+            return entry.text;
+        }
+
+        char[] buffer = BUFFER.get();
+        String text = new String(buffer, 0, format(cents, format, buffer, 0));
+        format.cache[slot] = new CacheEntry(cents, text);
+        return text;
+    }
+
+    /**
+     * writes the formatted amount into the buffer without allocating, useful with TextView.setText(char[], int, int)
+     * @param cents : amount in cents
+     * @param out : destination, needs MAX_LENGTH chars free from the offset
+     * @param offset : position in out to start writing at
+     * @return number of chars written
+     */
+    public static int format(long cents, char[] out, int offset){
+        return format(cents, formatFor(Locale.getDefault()), out, offset);
+    }
+
+    public static int format(long cents, Locale locale, char[] out, int offset){
+        return format(cents, formatFor(locale), out, offset);
     }
 
+    private static int format(long cents, LocaleFormat format, char[] out, int offset){
+        // digits are written backwards into the end of the space then moved to the offset
+        int end = offset + MAX_LENGTH;
+        int pos = end;
+        boolean negative = cents < 0;
+        char zero = format.zeroDigit;
 
+        if(negative){
+            for(int i = format.negativeSuffix.length - 1; i >= 0; i--){
+                out[--pos] = format.negativeSuffix[i];
+            }
+        }
+
+        // work with a negative magnitude so Long.MIN_VALUE doesn't overflow
+        long remaining = negative ? cents : -cents;
+        out[--pos] = (char) (zero - remaining % 10);
+        remaining /= 10;
+        out[--pos] = (char) (zero - remaining % 10);
+        remaining /= 10;
+        out[--pos] = format.decimalSeparator;
+
+        // "###" pattern has no forced integer digit, so whole amounts of zero print nothing
+        int digits = 0;
+        while(remaining != 0){
+            if(digits > 0 && digits % 3 == 0){
+                out[--pos] = format.groupingSeparator;
+            }
+            out[--pos] = (char) (zero - remaining % 10);
+            remaining /= 10;
+            digits++;
+        }
+        if(negative){
+            for(int i = format.negativePrefix.length - 1; i >= 0; i--){
+                out[--pos] = format.negativePrefix[i];
+            }
+        }
+
+        int length = end - pos;
+        System.arraycopy(out, pos, out, offset, length);
+        return length;
+    }
+
+    private static LocaleFormat formatFor(Locale locale){
+        LocaleFormat format = sLastFormat;
+        if(format != null && format.locale.equals(locale)){
+            return format;
+        }
+        synchronized(FORMATS){
+            format = FORMATS.get(locale);
+            if(format == null){
+                format = new LocaleFormat(locale);
+                FORMATS.put(locale, format);
+            }
+        }
+        sLastFormat = format;
+        return format;
+    }
+
+    private static int slot(long cents){
+        long h = cents * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (CACHE_SIZE - 1);
+    }
+
+
+    /**
+     * what DecimalFormat(PATTERN) uses in one locale, and the prices already formatted in it
+     */
+    private static final class LocaleFormat {
+        final Locale locale;
+        final char groupingSeparator;
+        final char decimalSeparator;
+        final char zeroDigit;
+        final char[] negativePrefix;       // e.g. a bidi mark then the minus sign
+        final char[] negativeSuffix;
+
+        // formatted amounts, replaced on collision. entries are immutable so racing threads are harmless
+        final CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
+
+        // for BigDecimal values, DecimalFormat isn't thread safe
+        final ThreadLocal<DecimalFormat> decimalFormat;
+
+        LocaleFormat(Locale locale) {
+            this.locale = locale;
+            final DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            decimalFormat = new ThreadLocal<DecimalFormat>() {
+                @Override
+                protected DecimalFormat initialValue() {
+                    return new DecimalFormat(PATTERN, symbols);
+                }
+            };
+            DecimalFormat format = new DecimalFormat(PATTERN, symbols);
+            groupingSeparator = symbols.getGroupingSeparator();
+            decimalSeparator = symbols.getDecimalSeparator();
+            zeroDigit = symbols.getZeroDigit();
+            String prefix = format.getNegativePrefix();
+            String suffix = format.getNegativeSuffix();
+            if(prefix.length() + suffix.length() > MAX_AFFIX_LENGTH){
+                prefix = String.valueOf(symbols.getMinusSign());
+                suffix = "";
+            }
+            negativePrefix = prefix.toCharArray();
+            negativeSuffix = suffix.toCharArray();
+        }
+    }
+
+
+    private static final class CacheEntry {
+        final long cents;
+        final String text;
+
+        CacheEntry(long cents, String text) {
+            this.cents = cents;
+            this.text = text;
+        }
+    }
 }
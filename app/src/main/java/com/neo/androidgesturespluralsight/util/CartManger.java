@@ -2,82 +2,839 @@ package com.neo.androidgesturespluralsight.util;
 
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.neo.androidgesturespluralsight.models.Money;
 import com.neo.androidgesturespluralsight.models.Product;
+import com.neo.androidgesturespluralsight.resources.ProductHeaders;
 import com.neo.androidgesturespluralsight.resources.Products;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * Created by User on 3/4/2018.
  */
 
+/**
+ * process wide cart. the cart is read from disk and turned into products once, after that reads
+ * come straight from memory and changes are applied in memory and written through to the CartStore.
+ *
+ * the cart list is ordered and split into the sections of ProductHeaders: the header products are
+ * stored in the list too and an item belongs to the section of the header above it. positions used
+ * here are positions in {@link #getCartList()}, headers included.
+ *
+ * thread safety: changes are serialized by the CartManger lock, so each one is atomic and every
+ * thread sees them in one order. readers don't lock: every change publishes a copy of the totals
+ * (a few numbers), and the list is read through an immutable {@link Snapshot} that is built on the
+ * first read after a change and then shared. a background sync writing to the cart never blocks or
+ * tears what the UI is showing.
+ *
+ * change feed: every change is also handed to the {@link OnCartChangedListener}s as added, removed
+ * or moved events with their positions, so screens showing the cart apply the delta instead of reloading
+ * it. events are delivered on the main thread in the order the changes were made.
+ *
+ * bulk changes (addAll, removeAll, moveRange, clearSection) are applied under one lock, written as one
+ * store transaction and delivered as one batch of events.
+ *
+ * loading: the cart is read on the cart writer thread, never on the caller's. {@link #preload} starts it
+ * early, {@link #load} hands the cart to the main thread once it is read. getInstance waits for it,
+ * so only call it where the cart is known to be loaded (or from a background thread).
+ */
 public class CartManger {
 
     private static final String TAG = "CartManger";
 
     static final String SHOPPING_CART = "shopping_cart";
     static final String CART_ITEMS = "cart_items";
-    Context mContext;
-    SharedPreferences mSharedPreferences;
-    SharedPreferences.Editor mEditor;
+    static final String CART_DIR = "cart";
+    static final String MIGRATION_CHECKPOINT = "cart_migration.checkpoint";
+
+    // loaded once per process, guarded by CartManger.class
+    private static CartManger sInstance;
+    private static IllegalStateException sLoadError;
+    private static boolean sLoading;
+    private static final ArrayList<OnLoadedListener> sLoadedListeners = new ArrayList<>();
+
+    private final CartStore mStore;
+    private final HashMap<Integer, Product> mProducts;     // serial -> product for everything in the cart, headers included
+    private final CartTotals mTotals = new CartTotals(ProductHeaders.HEADER_TITLES.length);
+    private volatile CartTotals mPublishedTotals;  // copy of mTotals as of the latest change, never modified
+    private volatile Snapshot mSnapshot;           // null after a change until the next read rebuilds it
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private ArrayList<CartChange> mChanges = new ArrayList<>();          // of the change being made, guarded by this
+    private final ArrayDeque<CartEvent> mEvents = new ArrayDeque<>();     // made but not yet delivered, guarded by itself
+    private volatile OnCartChangedListener[] mListeners = new OnCartChangedListener[0];    // replaced, never modified
+    private final Runnable mDeliverEvents = new Runnable() {
+        @Override
+        public void run() {
+            deliverEvents();
+        }
+    };
+    private final CartStore.OnCommitListener mLogCommitError = new CartStore.OnCommitListener() {
+        @Override
+        public void onCommit(IOException error) {
+            if(error != null){
+                Log.e(TAG, "onCommit: couldn't save the cart", error);
+            }
+        }
+    };
+
+    /**
+     * gets the cart once it is read, see {@link #load}
+     */
+    public interface OnLoadedListener {
+        void onLoaded(CartManger cartManger);
+    }
+
+    /**
+     * @return the cart, waiting for it to be read if it isn't yet
+     */
+    public static synchronized CartManger getInstance(Context context) {
+        startLoading(context);
+        boolean interrupted = false;
+        while(sInstance == null && sLoadError == null){
+            try {
+                CartManger.class.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        if(sLoadError != null){
+            throw sLoadError;
+        }
+        return sInstance;
+    }
+
+    /**
+     * starts reading the cart in the background if that hasn't started yet, e.g. at launch so it is
+     * ready by the time a screen needs it
+     */
+    public static synchronized void preload(Context context) {
+        startLoading(context);
+    }
 
-    public CartManger(Context context) {
-        mContext = context;
-        mSharedPreferences = mContext.getSharedPreferences(SHOPPING_CART, 0);
-        mEditor = mSharedPreferences.edit();
+    /**
+     * call from the main thread. the listener gets the cart on the main thread, right away if it is
+     * already read
+     */
+    public static void load(Context context, OnLoadedListener listener) {
+        CartManger instance;
+        synchronized (CartManger.class){
+            startLoading(context);
+            if(sLoadError != null){
+                throw sLoadError;
+            }
+            if(sInstance == null){
+                sLoadedListeners.add(listener);
+                return;
+            }
+            instance = sInstance;
+        }
+        listener.onLoaded(instance);
     }
 
+    /**
+     * opens the cart log in the files dir on the cart writer thread, called under the class lock
+     */
+    private static void startLoading(Context context) {
+        if(sLoading){
+            return;
+        }
+        sLoading = true;
+        final Context applicationContext = context.getApplicationContext();
+        CartStore.openAsync(new File(applicationContext.getFilesDir(), CART_DIR), new CartStore.OnOpenListener() {
+            @Override
+            public void onOpened(CartStore store, IOException error) {
+                onStoreOpened(applicationContext, store, error);
+            }
+        });
+    }
+
+    /**
+     * on the cart writer thread: hydrates the cart there too, then publishes it to getInstance and
+     * the load listeners
+     */
+    private static void onStoreOpened(Context context, CartStore store, IOException error) {
+        final CartManger instance = error == null ? new CartManger(store) : null;
+        final IllegalStateException failure = error == null ? null : new IllegalStateException("can't open the cart", error);
+        final ArrayList<OnLoadedListener> listeners;
+        synchronized (CartManger.class){
+            sInstance = instance;
+            sLoadError = failure;
+            listeners = new ArrayList<>(sLoadedListeners);
+            sLoadedListeners.clear();
+            CartManger.class.notifyAll();
+        }
+        if(instance != null){
+            instance.migrateLegacyCart(context);
+        }
+        if(listeners.isEmpty()){
+            return;
+        }
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                if(failure != null){
+                    // same as before the cart was loaded in the background, the app can't go on without it
+                    throw failure;
+                }
+                for(OnLoadedListener listener : listeners){
+                    listener.onLoaded(instance);
+                }
+            }
+        });
+    }
+
+    /**
+     * hydrates the cart from the store, also used by the JVM benchmarks with a store in a temp directory
+     */
+    CartManger(CartStore store) {
+        mStore = store;
+        int[] serialNumbers = store.serialNumbers();
+        mProducts = new HashMap<>(serialNumbers.length * 2);
+
+        // carts from before sections were saved have no headers, their items end up in the last section
+        for(int section = 0; section < ProductHeaders.HEADER_TITLES.length; section++){
+            Product header = ProductHeaders.newHeader(section);
+            if(!store.contains(header.getSerial_number())){
+                int above = section == 0 ? -1 : store.indexOf(ProductHeaders.serialOf(section - 1));
+                store.insert(above + 1, header.getSerial_number());
+            }
+            mProducts.put(header.getSerial_number(), header);
+        }
+
+        for(int serialNumber : serialNumbers){
+            if(serialNumber < 0){
+                continue;
+            }
+            Product product = Products.bySerial(serialNumber);
+            if(product == null){
+                // product was dropped from the catalog since it was added to the cart
+                Log.w(TAG, "CartManger: removing unknown serial number: " + serialNumber);
+                store.remove(serialNumber);
+                continue;
+            }
+            mProducts.put(serialNumber, product);
+        }
+
+        // the only full pass over the cart, totals are kept up to date per change from here on
+        int section = -1;
+        for(int serialNumber : store.serialNumbers()){
+            if(serialNumber < 0){
+                section++;
+            }
+            else{
+                mTotals.onAdded(section, mProducts.get(serialNumber).getPrice());
+            }
+        }
+        mPublishedTotals = mTotals.copy();
+    }
+
+    /**
+     * carts saved by older versions in the shopping_cart SharedPreferences are moved into the cart
+     * on a background thread, so a big one doesn't hold up the first launch. the items show up as
+     * they are added, with the usual change events. see LegacyCartMigration
+     */
+    private void migrateLegacyCart(Context context){
+        File legacyFile = new File(new File(context.getApplicationInfo().dataDir, "shared_prefs"), SHOPPING_CART + ".xml");
+        final LegacyCartMigration migration = new LegacyCartMigration(legacyFile,
+                new File(context.getFilesDir(), MIGRATION_CHECKPOINT), CART_ITEMS);
+        if(!migration.isNeeded()){
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    int moved = migration.run(new LegacyCartMigration.Target() {
+                        @Override
+                        public void addAll(int[] serialNumbers, int count) throws IOException {
+                            ArrayList<Product> products = new ArrayList<>(count);
+                            for(int i = 0; i < count; i++){
+                                Product product = Products.bySerial(serialNumbers[i]);
+                                if(product != null){
+                                    products.add(product);
+                                }
+                            }
+                            CartManger.this.addAll(products);
+                            // durable before the checkpoint moves on, a remove the user can still undo stays undoable
+                            mStore.sync();
+                        }
+                    });
+                    Log.d(TAG, "migrateLegacyCart: moved " + moved + " items");
+                } catch (IOException e) {
+                    // picked up where it stopped on the next launch
+                    Log.e(TAG, "migrateLegacyCart: couldn't move the old cart over", e);
+                }
+            }
+        }, "cart-migration");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * adds the product at the end of the cart (the last section). the change shows up in reads right
+     * away, it is written to disk in the background
+     */
     public void addItemToCart(Product product){
-        Set<String> cartItems = mSharedPreferences.getStringSet(CART_ITEMS, new HashSet<String>());
-        cartItems.add(String.valueOf(product.getSerial_number()));
+        synchronized (this){
+            if(mStore.add(product.getSerial_number())){
+                int position = mStore.size() - 1;
+                int section = mStore.sectionAt(position);
+                mProducts.put(product.getSerial_number(), product);
+                mTotals.onAdded(section, product.getPrice());
+                record(CartChange.ADDED, product, position, position, section, section);
+                publish(false);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * adds the products at the end of the cart as one change: one disk transaction, one event for the
+     * listeners. products already in the cart are skipped
+     */
+    public void addAll(Collection<? extends Product> products){
+        synchronized (this){
+            LinkedHashMap<Integer, Product> adding = new LinkedHashMap<>();
+            for(Product product : products){
+                if(product.getSerial_number() >= 0 && !mStore.contains(product.getSerial_number())){
+                    adding.put(product.getSerial_number(), product);
+                }
+            }
+            if(adding.isEmpty()){
+                return;
+            }
+            int[] serialNumbers = new int[adding.size()];
+            int i = 0;
+            for(int serialNumber : adding.keySet()){
+                serialNumbers[i++] = serialNumber;
+            }
+            int position = mStore.size();
+            mStore.addAll(serialNumbers);
+            int section = mStore.sectionAt(mStore.size() - 1);
+            for(Product product : adding.values()){
+                mProducts.put(product.getSerial_number(), product);
+                mTotals.onAdded(section, product.getPrice());
+                record(CartChange.ADDED, product, position, position, section, section);
+                position++;
+            }
+            publish(true);
+        }
+        dispatch();
+    }
+
+    /**
+     * removes the products as one change: one disk transaction, one event for the listeners.
+     * products not in the cart (and headers) are skipped
+     */
+    public void removeAll(Collection<? extends Product> products){
+        synchronized (this){
+            long[] removing = new long[products.size()];
+            int count = 0;
+            for(Product product : products){
+                int position = product.getSerial_number() < 0 ? -1 : mStore.indexOf(product.getSerial_number());
+                if(position >= 0){
+                    removing[count++] = positionKey(position, product.getSerial_number());
+                }
+            }
+            removeBottomUp(removing, count);
+        }
+        dispatch();
+    }
+
+    /**
+     * removes every item of the section, the header stays. one disk transaction, one event
+     */
+    public void clearSection(int section){
+        synchronized (this){
+            int header = mStore.indexOf(ProductHeaders.serialOf(section));
+            int end = section + 1 < ProductHeaders.HEADER_TITLES.length
+                    ? mStore.indexOf(ProductHeaders.serialOf(section + 1)) : mStore.size();
+            long[] removing = new long[end - header - 1];
+            for(int position = header + 1; position < end; position++){
+                removing[position - header - 1] = positionKey(position, mStore.serialAt(position));
+            }
+            removeBottomUp(removing, removing.length);
+        }
+        dispatch();
+    }
+
+    /**
+     * packs a position and a serial number so sorting the keys sorts by position
+     */
+    private static long positionKey(int position, int serialNumber){
+        return (long) position << 32 | serialNumber;
+    }
+
+    /**
+     * removes the items in removing[0, count) in one transaction, from the bottom of the list up so
+     * every event can use the position the item had before the batch. called under the lock
+     */
+    private void removeBottomUp(long[] removing, int count){
+        if(count == 0){
+            return;
+        }
+        Arrays.sort(removing, 0, count);
+        int[] serialNumbers = new int[count];
+        int[] sections = new int[count];
+        for(int i = 0; i < count; i++){
+            long key = removing[count - 1 - i];
+            serialNumbers[i] = (int) key;
+            sections[i] = mStore.sectionAt((int) (key >>> 32));
+        }
+        int[] positions = mStore.removeAll(serialNumbers);
+        for(int i = 0; i < count; i++){
+            Product removed = mProducts.remove(serialNumbers[i]);
+            mTotals.onRemoved(sections[i], removed.getPrice());
+            record(CartChange.REMOVED, removed, positions[i], positions[i], sections[i], sections[i]);
+        }
+        publish(true);
+    }
+
+    /**
+     * called under the lock after a change was applied, the change's events are recorded by now.
+     * publishes the totals for readers and queues the events as one delivery
+     * @param batch : true if the events came from one bulk change
+     */
+    private void publish(boolean batch){
+        mPublishedTotals = mTotals.copy();
+        mSnapshot = null;
+
+        if(mChanges.isEmpty()){
+            return;
+        }
+        // the listeners are captured now, one added later already got a list that includes this change
+        CartEvent event = new CartEvent(mChanges, batch, mListeners);
+        mChanges = new ArrayList<>();
+        synchronized (mEvents){
+            mEvents.add(event);
+        }
+    }
+
+    /**
+     * called under the lock for every change, remembers it for the listeners if there are any
+     */
+    private void record(int type, Product product, int fromPosition, int toPosition, int fromSection, int toSection){
+        if(mListeners.length > 0){
+            mChanges.add(new CartChange(type, product, fromPosition, toPosition, fromSection, toSection));
+        }
+    }
+
+    /**
+     * delivers queued events, called after every change once the lock is released so listeners can
+     * read the cart without holding up other writers
+     */
+    private void dispatch(){
+        synchronized (mEvents){
+            if(mEvents.isEmpty()){
+                return;
+            }
+        }
+        if(Looper.myLooper() == Looper.getMainLooper()){
+            // a change made on the main thread (a drag, a swipe) is applied before the call returns,
+            // after anything a background thread queued earlier
+            deliverEvents();
+        }
+        else{
+            mHandler.post(mDeliverEvents);
+        }
+    }
+
+    private void deliverEvents(){
+        while(true){
+            CartEvent event;
+            synchronized (mEvents){
+                event = mEvents.poll();
+            }
+            if(event == null){
+                return;
+            }
+            event.deliver();
+        }
+    }
 
-        mEditor.putStringSet(CART_ITEMS, cartItems);
-        mEditor.commit();
+    /**
+     * starts sending changes to the listener, on the main thread
+     * @return the cart list (headers included) the events that follow apply to, as of the same moment
+     */
+    public synchronized List<Product> addOnCartChangedListener(OnCartChangedListener listener){
+        OnCartChangedListener[] listeners = Arrays.copyOf(mListeners, mListeners.length + 1);
+        listeners[mListeners.length] = listener;
+        mListeners = listeners;
+        return getSnapshot().getList();
     }
 
-    public ArrayList<Product> getCartItems(){
-        Set<String> cartItems = mSharedPreferences.getStringSet(CART_ITEMS, new HashSet<String>());
+    /**
+     * call from the main thread, no event reaches the listener after this returns
+     */
+    public synchronized void removeOnCartChangedListener(OnCartChangedListener listener){
+        ArrayList<OnCartChangedListener> listeners = new ArrayList<>(Arrays.asList(mListeners));
+        listeners.remove(listener);
+        mListeners = listeners.toArray(new OnCartChangedListener[0]);
+        // events already queued for it are skipped
+        synchronized (mEvents){
+            for(CartEvent event : mEvents){
+                event.skip(listener);
+            }
+        }
+    }
 
-        ArrayList<Product> productsList = new ArrayList<>();
-        HashMap<String, Product> productMap = Products.getProducts();
-        for(String serialNumber : cartItems){
-            productsList.add(productMap.get(serialNumber));
-            Log.d(TAG, "getCartItem: serial number: " + serialNumber);
-            Log.d(TAG, "getCartItem: item title: " + productMap.get(serialNumber).getTitle());
+    /**
+     * @return the cart as of the latest change, safe to keep and read from any thread
+     */
+    public Snapshot getSnapshot(){
+        Snapshot snapshot = mSnapshot;
+        if(snapshot != null){
+            return snapshot;
         }
+        synchronized (this){
+            if(mSnapshot == null){
+                mSnapshot = new Snapshot(mStore.serialNumbers(), mProducts, mPublishedTotals);
+            }
+            return mSnapshot;
+        }
+    }
 
-        return productsList;
+    /**
+     * @return read only list of the products in the cart in list order, without the headers. no disk or catalog access
+     */
+    public List<Product> getCartItems(){
+        return getSnapshot().getItems();
+    }
+
+    /**
+     * @return read only list of the section headers and products in the order the cart screen shows them
+     */
+    public List<Product> getCartList(){
+        return getSnapshot().getList();
     }
 
     public void removeItemFromCart(Product product){
-        Set<String> cartItems = mSharedPreferences.getStringSet(CART_ITEMS, new HashSet<String>());
+        synchronized (this){
+            int position = mStore.indexOf(product.getSerial_number());
+            if(position < 0){
+                return;
+            }
+            int section = mStore.sectionAt(position);
+            mStore.remove(product.getSerial_number());
+            Product removed = mProducts.remove(product.getSerial_number());
+            mTotals.onRemoved(section, removed.getPrice());
+            record(CartChange.REMOVED, removed, position, position, section, section);
+            publish(false);
+        }
+        dispatch();
+    }
 
-        cartItems.remove(String.valueOf(product.getSerial_number()));
-        mEditor.putStringSet(CART_ITEMS, cartItems);
-        mEditor.commit();
+    /**
+     * removes the product like removeItemFromCart, but it can be put back with {@link #undoRemove}
+     * for a few seconds. until then nothing is written, see CartStore.removeUndoably
+     */
+    public void removeItemUndoably(Product product){
+        synchronized (this){
+            int position = product.getSerial_number() < 0 ? -1 : mStore.indexOf(product.getSerial_number());
+            if(position < 0){
+                return;
+            }
+            int section = mStore.sectionAt(position);
+            mStore.removeUndoably(product.getSerial_number());
+            Product removed = mProducts.remove(product.getSerial_number());
+            mTotals.onRemoved(section, removed.getPrice());
+            record(CartChange.REMOVED, removed, position, position, section, section);
+            publish(false);
+        }
+        dispatch();
     }
-}
 
+    /**
+     * puts a product removed with removeItemUndoably back where it was, in memory only
+     * @return false if it is too late, the remove has been saved
+     */
+    public boolean undoRemove(Product product){
+        synchronized (this){
+            int position = mStore.undoRemove(product.getSerial_number());
+            if(position < 0){
+                return false;
+            }
+            int section = mStore.sectionAt(position);
+            mProducts.put(product.getSerial_number(), product);
+            mTotals.onAdded(section, product.getPrice());
+            record(CartChange.ADDED, product, position, position, section, section);
+            publish(false);
+        }
+        dispatch();
+        return true;
+    }
 
+    /**
+     * moves a product to a new position in the cart list, which may put it in another section.
+     * only the moved product is written to disk
+     */
+    public void moveItem(Product product, int toPosition){
+        if(product.getSerial_number() < 0 || toPosition < 1){
+            // headers stay put and nothing goes above the first one
+            return;
+        }
+        synchronized (this){
+            int from = mStore.indexOf(product.getSerial_number());
+            if(from < 0 || from == toPosition){
+                return;
+            }
+            int fromSection = mStore.sectionAt(from);
+            mStore.move(product.getSerial_number(), toPosition);
+            int toSection = mStore.sectionAt(toPosition);
+            Product moved = mProducts.get(product.getSerial_number());
+            mTotals.onMoved(fromSection, toSection, moved.getPrice());
+            record(CartChange.MOVED, moved, from, toPosition, fromSection, toSection);
+            publish(false);
+        }
+        dispatch();
+    }
 
+    /**
+     * moves count items starting at fromPosition so the first ends up at toPosition, in order, as one
+     * change. the range must be items of one section, ranges with a header in them are ignored
+     */
+    public void moveRange(int fromPosition, int count, int toPosition){
+        synchronized (this){
+            int size = mStore.size();
+            if(count < 1 || fromPosition < 1 || toPosition < 1 || fromPosition == toPosition
+                    || fromPosition + count > size || toPosition + count > size){
+                return;
+            }
+            int last = fromPosition + count - 1;
+            int fromSection = mStore.sectionAt(fromPosition);
+            if(mStore.serialAt(fromPosition) < 0 || mStore.sectionAt(last) != fromSection){
+                return;
+            }
+            Product[] moving = new Product[count];
+            for(int i = 0; i < count; i++){
+                moving[i] = mProducts.get(mStore.serialAt(fromPosition + i));
+            }
+            mStore.moveRange(fromPosition, count, toPosition);
+            int toSection = mStore.sectionAt(toPosition);
+            int[] step = new int[2];
+            for(int i = 0; i < count; i++){
+                // the store moves them one at a time, the events replay the same steps
+                CartStore.moveOrder(fromPosition, count, toPosition, i, step);
+                mTotals.onMoved(fromSection, toSection, moving[i].getPrice());
+                record(CartChange.MOVED, moving[i], step[0], step[1], fromSection, toSection);
+            }
+            publish(true);
+        }
+        dispatch();
+    }
 
+    /**
+     * @return index into ProductHeaders.HEADER_TITLES of the section the position in the cart list is in
+     */
+    public synchronized int getSection(int position){
+        return mStore.sectionAt(position);
+    }
 
+    /**
+     * @return position of the section's header in the cart list
+     */
+    public synchronized int getHeaderPosition(int section){
+        return mStore.indexOf(ProductHeaders.serialOf(section));
+    }
 
+    /**
+     * @return totals as of the latest change, O(1) and never locks
+     */
+    public CartTotals getTotals(){
+        return mPublishedTotals;
+    }
 
+    public Money getTotal(){
+        return mPublishedTotals.getTotal();
+    }
 
+    public int getItemCount(){
+        return mPublishedTotals.getItemCount();
+    }
 
+    public Money getSubtotal(int section){
+        return mPublishedTotals.getSubtotal(section);
+    }
 
+    public int getItemCount(int section){
+        return mPublishedTotals.getItemCount(section);
+    }
 
+    /**
+     * calls the listener once the changes made so far are on disk, on the cart writer thread
+     */
+    public void whenSaved(CartStore.OnCommitListener listener){
+        mStore.whenCommitted(listener);
+    }
 
+    /**
+     * starts writing any queued changes on the cart writer thread, call from onStop so nothing is left
+     * queued when the process can be killed. returns right away, removes that can still be undone stay
+     * undoable, see CartStore.sync
+     */
+    public void save(){
+        mStore.syncAsync();
+        mStore.whenCommitted(mLogCommitError);
+    }
 
+    /**
+     * like save, but also ends the undo window, call when the screen offering the undo goes away for good
+     */
+    public void flush(){
+        mStore.flushAsync();
+        mStore.whenCommitted(mLogCommitError);
+    }
 
 
+    /**
+     * one change to the cart list. positions are positions in the list right before (from) and right
+     * after (to) the change, sections are the sections the product was and is in, so applying the
+     * events in order to the list returned by addOnCartChangedListener keeps it equal to the cart.
+     * a bulk change comes as onBatchStarted, the events of its items in order, then onBatchFinished
+     */
+    public interface OnCartChangedListener {
 
+        void onItemAdded(Product product, int position, int section);
 
+        void onItemRemoved(Product product, int position, int section);
 
+        void onItemMoved(Product product, int fromPosition, int toPosition, int fromSection, int toSection);
+
+        void onBatchStarted();
+
+        void onBatchFinished();
+    }
+
+    private static final class CartChange {
+
+        static final int ADDED = 0;
+        static final int REMOVED = 1;
+        static final int MOVED = 2;
+
+        final int mType;
+        final Product mProduct;
+        final int mFromPosition, mToPosition;
+        final int mFromSection, mToSection;
+
+        CartChange(int type, Product product, int fromPosition, int toPosition, int fromSection, int toSection) {
+            mType = type;
+            mProduct = product;
+            mFromPosition = fromPosition;
+            mToPosition = toPosition;
+            mFromSection = fromSection;
+            mToSection = toSection;
+        }
+
+        void deliver(OnCartChangedListener listener){
+            switch (mType){
+                case ADDED:
+                    listener.onItemAdded(mProduct, mToPosition, mToSection);
+                    break;
+                case REMOVED:
+                    listener.onItemRemoved(mProduct, mFromPosition, mFromSection);
+                    break;
+                case MOVED:
+                    listener.onItemMoved(mProduct, mFromPosition, mToPosition, mFromSection, mToSection);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * the changes of one call to the cart, delivered together
+     */
+    private static final class CartEvent {
+
+        final ArrayList<CartChange> mChanges;
+        final boolean mBatch;
+        final OnCartChangedListener[] mListeners;
+
+        CartEvent(ArrayList<CartChange> changes, boolean batch, OnCartChangedListener[] listeners) {
+            mChanges = changes;
+            mBatch = batch;
+            mListeners = listeners.clone();
+        }
+
+        void skip(OnCartChangedListener listener){
+            for(int i = 0; i < mListeners.length; i++){
+                if(mListeners[i] == listener){
+                    mListeners[i] = null;
+                }
+            }
+        }
+
+        void deliver(){
+            for(OnCartChangedListener listener : mListeners){
+                if(listener == null){
+                    continue;
+                }
+                if(mBatch){
+                    listener.onBatchStarted();
+                }
+                for(CartChange change : mChanges){
+                    change.deliver(listener);
+                }
+                if(mBatch){
+                    listener.onBatchFinished();
+                }
+            }
+        }
+    }
+
+    /**
+     * immutable copy of the cart list and its totals at one point in time
+     */
+    public static final class Snapshot {
+
+        private final List<Product> mList;
+        private final List<Product> mItems;
+        private final CartTotals mTotals;
+
+        Snapshot(int[] serialNumbers, HashMap<Integer, Product> products, CartTotals totals) {
+            ArrayList<Product> list = new ArrayList<>(serialNumbers.length);
+            ArrayList<Product> items = new ArrayList<>(serialNumbers.length);
+            for(int serialNumber : serialNumbers){
+                Product product = products.get(serialNumber);
+                list.add(product);
+                if(serialNumber >= 0){
+                    items.add(product);
+                }
+            }
+            mList = Collections.unmodifiableList(list);
+            mItems = Collections.unmodifiableList(items);
+            mTotals = totals;
+        }
+
+        public List<Product> getList() {
+            return mList;
+        }
+
+        public List<Product> getItems() {
+            return mItems;
+        }
+
+        /**
+         * @return totals matching the list, don't modify
+         */
+        public CartTotals getTotals() {
+            return mTotals;
+        }
+    }
+}
@@ -0,0 +1,942 @@
+package com.neo.androidgesturespluralsight.util;
+
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * cart contents kept in memory and persisted as an append only operation log plus a snapshot.
+ *
+ * the cart is an ordered list of serial numbers in a {@link SerialOrderTree}. negative serials are
+ * section markers (the cart headers), an item belongs to the section of the last marker before it.
+ * the order and sections survive restarts and every change, a move included, is O(log n).
+ *
+ * every change appends one small record to the log, so it costs the same no matter how big the
+ * cart is; a move only records the entry that moved and where it went. once the log holds a lot more records than the cart has items it is compacted:
+ * the whole cart is written to a new snapshot, swapped in with a rename, and the log starts over
+ * once the directory is synced, so the rename is known to be on disk before the old records go.
+ *
+ * bulk changes ({@link #addAll}, {@link #removeAll}, {@link #moveRange}) are one transaction: their
+ * records go behind a batch record holding their count, and replay applies all of them or none.
+ *
+ * writes are group committed: a change is applied in memory and its record queued, the queue is
+ * written and synced on a background thread once the commit window has passed, so a burst of
+ * changes (e.g. a run of swipes) costs one durable write instead of one per change.
+ * {@link #sync()} writes whatever is queued right away, {@link #flush()} does the same after ending the
+ * undo window, for when nothing can undo any more. both block on the sync, from the main thread (e.g.
+ * when the app is being stopped) use {@link #syncAsync()} and {@link #flushAsync()} instead.
+ *
+ * undoable removes ({@link #removeUndoably}) don't reach the log right away: the entry is hidden in
+ * memory and noted in a small ring buffer journal. {@link #undoRemove} within the undo window puts it
+ * back where it was without any disk I/O, otherwise the journaled removes are logged together once
+ * the window has passed, when the journal is full, or before anything that depends on positions
+ * (insert, move, compaction, flush) is logged. a sync leaves them in the journal.
+ *
+ * recovery: each log record carries a CRC, replay stops at the first torn or corrupt record and the
+ * log is cut back to the last good one. the log header holds the generation of the snapshot it
+ * continues, a log left over from before the latest snapshot is thrown away instead of replayed.
+ *
+ * files (in the directory passed to open):
+ *  cart.snapshot : magic, version, generation, count, serials in list order, CRC of everything before it
+ *  cart.log      : magic, generation, then records of
+ *                  (op, serial, CRC) for add (append at the end) and remove, or
+ *                  (op, serial, index, CRC) for insert and move, and
+ *                  (op, count, CRC) for a batch, followed by the count records in it
+ */
+public final class CartStore {
+
+    static final String SNAPSHOT_FILE = "cart.snapshot";
+    static final String LOG_FILE = "cart.log";
+    private static final String SNAPSHOT_TEMP_FILE = "cart.snapshot.tmp";
+
+    private static final int SNAPSHOT_MAGIC = 0x43534E50;     // "CSNP"
+    private static final int LOG_MAGIC = 0x434C4F47;          // "CLOG"
+    private static final int VERSION = 1;
+
+    private static final int LOG_HEADER_SIZE = 8;
+    private static final int SHORT_RECORD_SIZE = 9;
+    private static final int LONG_RECORD_SIZE = 13;
+
+    static final byte OP_ADD = 1;
+    static final byte OP_REMOVE = 2;
+    static final byte OP_INSERT = 3;
+    static final byte OP_MOVE = 4;
+    static final byte OP_BATCH = 5;
+
+    // compact once the log is this long and more than twice the size of the cart
+    private static final int MIN_COMPACT_RECORDS = 256;
+
+    static final long DEFAULT_COMMIT_WINDOW_MS = 100;
+
+    // how long a journaled remove can be undone, longer than a Snackbar shows its action
+    static final long UNDO_WINDOW_MS = 5000;
+    static final int JOURNAL_CAPACITY = 32;
+
+    // one writer for every store, file access happens here or in sync() and flush()
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "cart-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * told when the changes made before it was registered are on disk, or that writing them failed.
+     * called on the thread that did the write
+     */
+    public interface OnCommitListener {
+        /**
+         * @param error : null if the changes are durable
+         */
+        void onCommit(IOException error);
+    }
+
+    /**
+     * gets the store opened by {@link #openAsync}, called on the writer thread
+     */
+    public interface OnOpenListener {
+        /**
+         * @param store : null if it couldn't be opened
+         * @param error : why it couldn't, null if it was opened
+         */
+        void onOpened(CartStore store, IOException error);
+    }
+
+    private final File mDir;
+    private final long mCommitWindowMs;
+    private final SerialOrderTree mOrder = new SerialOrderTree();
+    private final CRC32 mCrc = new CRC32();
+
+    // queued records, guarded by this
+    private byte[] mPending = new byte[LONG_RECORD_SIZE * 64];
+    private int mPendingLength;
+    private int mPendingRecords;
+    private long mAppended;         // records ever queued
+    private long mDurable;          // records ever synced to disk
+    private boolean mCommitScheduled;
+    private int mBatchFirstRecord;  // mPendingRecords after the open batch record
+    private boolean mInBatch;       // batches don't nest, replay drops a batch holding a batch record
+
+    // undoable removes not logged yet, oldest first from mJournalHead, guarded by this
+    private final int[] mJournalSerials = new int[JOURNAL_CAPACITY];
+    private final long[] mJournalTimes = new long[JOURNAL_CAPACITY];
+    private int mJournalHead;
+    private int mJournalSize;
+    private boolean mJournalRetireScheduled;
+    private final ArrayList<PendingListener> mListeners = new ArrayList<>();
+
+    // file state, guarded by mWriteLock
+    private final Object mWriteLock = new Object();
+    private RandomAccessFile mLog;
+    private int mGeneration;
+    private int mLogRecords;
+    private int mCommits;
+
+    private final Runnable mCommitRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                commit(false);
+            } catch (IOException e) {
+                // already passed to the listeners, the records stay queued for the next commit
+            }
+        }
+    };
+
+
+    private final Runnable mRetireRunnable = new Runnable() {
+        @Override
+        public void run() {
+            retireExpired();
+        }
+    };
+
+
+    private CartStore(File dir, long commitWindowMs) {
+        mDir = dir;
+        mCommitWindowMs = commitWindowMs;
+    }
+
+    public static CartStore open(File dir) throws IOException {
+        return open(dir, DEFAULT_COMMIT_WINDOW_MS);
+    }
+
+    /**
+     * open on the writer thread, for callers that can't wait for the disk (the main thread). the
+     * listener runs there too, before any write the store queues
+     */
+    public static void openAsync(final File dir, final OnOpenListener listener) {
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                CartStore store;
+                try {
+                    store = open(dir);
+                } catch (IOException e) {
+                    listener.onOpened(null, e);
+                    return;
+                }
+                listener.onOpened(store, null);
+            }
+        });
+    }
+
+    /**
+     * loads the snapshot and replays the log, repairing a log that was cut short by a crash
+     * @param commitWindowMs : how long a change may wait for others to share its disk write
+     */
+    public static CartStore open(File dir, long commitWindowMs) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create cart directory: " + dir);
+        }
+        CartStore store = new CartStore(dir, commitWindowMs);
+        synchronized (store.mWriteLock) {
+            store.readSnapshot();
+            store.replayLog();
+        }
+        return store;
+    }
+
+    /**
+     * adds the serial number at the end of the cart
+     * @return false if it is already in the cart
+     */
+    public synchronized boolean add(int serialNumber) {
+        if (mOrder.isHidden(serialNumber)) {
+            // added back after an undoable remove, the remove has to be logged first
+            retireJournal();
+        }
+        if (!mOrder.insert(mOrder.size(), serialNumber)) {
+            return false;
+        }
+        append(OP_ADD, serialNumber, 0);
+        return true;
+    }
+
+    /**
+     * @return false if it is already in the cart
+     */
+    public synchronized boolean insert(int index, int serialNumber) {
+        retireJournal();
+        if (!mOrder.insert(index, serialNumber)) {
+            return false;
+        }
+        append(OP_INSERT, serialNumber, index);
+        return true;
+    }
+
+    /**
+     * @return position it was removed from, or -1 if it wasn't in the cart
+     */
+    public synchronized int remove(int serialNumber) {
+        int index = mOrder.remove(serialNumber);
+        if (index >= 0) {
+            append(OP_REMOVE, serialNumber, 0);
+        }
+        return index;
+    }
+
+    /**
+     * moves the entry so it ends up at toIndex
+     * @return position it was moved from, or -1 if it isn't in the cart
+     */
+    public synchronized int move(int serialNumber, int toIndex) {
+        retireJournal();
+        int from = mOrder.move(serialNumber, toIndex);
+        if (from >= 0 && from != toIndex) {
+            append(OP_MOVE, serialNumber, toIndex);
+        }
+        return from;
+    }
+
+    /**
+     * adds the serial numbers at the end of the cart in one transaction, the ones already in it are skipped
+     * @return how many were added
+     */
+    public synchronized int addAll(int[] serialNumbers) {
+        retireJournal();    // add() would log it inside the batch otherwise
+        int batch = beginBatch();
+        int added = 0;
+        for (int serialNumber : serialNumbers) {
+            if (add(serialNumber)) {
+                added++;
+            }
+        }
+        endBatch(batch);
+        return added;
+    }
+
+    /**
+     * removes the serial numbers one after the other in one transaction
+     * @return for each serial number the position it was removed from (after the removals before it),
+     * or -1 if it wasn't in the cart
+     */
+    public synchronized int[] removeAll(int[] serialNumbers) {
+        int batch = beginBatch();
+        int[] positions = new int[serialNumbers.length];
+        for (int i = 0; i < serialNumbers.length; i++) {
+            positions[i] = remove(serialNumbers[i]);
+        }
+        endBatch(batch);
+        return positions;
+    }
+
+    /**
+     * moves the count entries starting at fromIndex so the first of them ends up at toIndex, keeping
+     * their order, in one transaction. logged as one move per entry, in the order {@link #moveOrder} gives
+     */
+    public synchronized void moveRange(int fromIndex, int count, int toIndex) {
+        if (count < 0 || fromIndex < 0 || toIndex < 0 || fromIndex + count > mOrder.size()
+                || toIndex + count > mOrder.size()) {
+            throw new IndexOutOfBoundsException("from: " + fromIndex + ", count: " + count + ", to: " + toIndex
+                    + ", size: " + mOrder.size());
+        }
+        if (fromIndex == toIndex) {
+            return;
+        }
+        retireJournal();    // before the batch, move() would log it inside it otherwise
+        int batch = beginBatch();
+        int[] step = new int[2];
+        for (int i = 0; i < count; i++) {
+            moveOrder(fromIndex, count, toIndex, i, step);
+            move(mOrder.get(step[0]), step[1]);
+        }
+        endBatch(batch);
+    }
+
+    /**
+     * a range move is done one entry at a time: the i-th step moves the entry at out[0] to out[1]. when
+     * moving down the top entry of the range is taken each time, when moving up they are taken top to
+     * bottom. out is filled in rather than returned so a long range doesn't allocate per step
+     */
+    static void moveOrder(int fromIndex, int count, int toIndex, int step, int[] out) {
+        if (toIndex > fromIndex) {
+            out[0] = fromIndex;
+            out[1] = toIndex + count - 1;
+        } else {
+            out[0] = fromIndex + step;
+            out[1] = toIndex + step;
+        }
+    }
+
+    /**
+     * removes the entry in memory only, it can be put back with {@link #undoRemove} for UNDO_WINDOW_MS.
+     * the remove is logged after that, batched with the others that expire together
+     * @return position it was removed from, or -1 if it wasn't in the cart
+     */
+    public synchronized int removeUndoably(int serialNumber) {
+        int index = mOrder.hide(serialNumber);
+        if (index < 0) {
+            return -1;
+        }
+        if (mJournalSize == JOURNAL_CAPACITY) {
+            retire(1);
+        }
+        int slot = (mJournalHead + mJournalSize) % JOURNAL_CAPACITY;
+        mJournalSerials[slot] = serialNumber;
+        mJournalTimes[slot] = System.currentTimeMillis();
+        mJournalSize++;
+        if (!mJournalRetireScheduled) {
+            mJournalRetireScheduled = true;
+            WRITER.schedule(mRetireRunnable, UNDO_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+        return index;
+    }
+
+    /**
+     * puts back an entry removed with {@link #removeUndoably} at the place it had, if its remove
+     * hasn't been logged yet. nothing is written
+     * @return position it is back at, or -1 if it is too late
+     */
+    public synchronized int undoRemove(int serialNumber) {
+        for (int i = mJournalSize - 1; i >= 0; i--) {
+            int slot = (mJournalHead + i) % JOURNAL_CAPACITY;
+            if (mJournalSerials[slot] != serialNumber) {
+                continue;
+            }
+            // close the gap, the journal is small so this is bounded
+            for (int j = i; j < mJournalSize - 1; j++) {
+                int to = (mJournalHead + j) % JOURNAL_CAPACITY;
+                int from = (mJournalHead + j + 1) % JOURNAL_CAPACITY;
+                mJournalSerials[to] = mJournalSerials[from];
+                mJournalTimes[to] = mJournalTimes[from];
+            }
+            mJournalSize--;
+            return mOrder.unhide(serialNumber);
+        }
+        return -1;
+    }
+
+    public synchronized boolean contains(int serialNumber) {
+        return mOrder.contains(serialNumber);
+    }
+
+    public synchronized int size() {
+        return mOrder.size();
+    }
+
+    /**
+     * @return position of the serial number, or -1 if it isn't in the cart
+     */
+    public synchronized int indexOf(int serialNumber) {
+        return mOrder.indexOf(serialNumber);
+    }
+
+    public synchronized int serialAt(int index) {
+        return mOrder.get(index);
+    }
+
+    /**
+     * @return number of section markers before the position, i.e. the section of the entry there
+     * when markers are counted from 0. -1 for entries above the first marker
+     */
+    public synchronized int sectionAt(int index) {
+        return mOrder.markersBefore(index + 1) - 1;
+    }
+
+    /**
+     * @return copy of the serial numbers in the cart, markers included, in list order
+     */
+    public synchronized int[] serialNumbers() {
+        return mOrder.toArray();
+    }
+
+    /**
+     * calls the listener once every change made so far is on disk, right away if nothing is queued
+     */
+    public void whenCommitted(OnCommitListener listener) {
+        synchronized (this) {
+            if (mDurable < mAppended) {
+                mListeners.add(new PendingListener(mAppended, listener));
+                return;
+            }
+        }
+        listener.onCommit(null);
+    }
+
+    /**
+     * writes and syncs the queued changes on the calling thread instead of waiting for the commit window.
+     * journaled removes aren't queued yet, they stay undoable
+     */
+    public void sync() throws IOException {
+        commit(false);
+    }
+
+    /**
+     * like sync, but logs the journaled removes first, so they can't be undone any more
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            retireJournal();
+        }
+        commit(false);
+    }
+
+    /**
+     * sync on the writer thread, starts it now and returns right away. use whenCommitted to hear how it went
+     */
+    public void syncAsync() {
+        WRITER.execute(mCommitRunnable);
+    }
+
+    /**
+     * flush on the writer thread: the undo window ends now, the write starts now and this returns right away
+     */
+    public void flushAsync() {
+        synchronized (this) {
+            retireJournal();
+        }
+        WRITER.execute(mCommitRunnable);
+    }
+
+    /**
+     * writes the whole cart into a new snapshot and empties the log
+     */
+    public void compact() throws IOException {
+        commit(true);
+    }
+
+    public void close() throws IOException {
+        synchronized (this) {
+            retireJournal();
+        }
+        synchronized (mWriteLock) {
+            commit(false);
+            if (mLog != null) {
+                mLog.close();
+                mLog = null;
+            }
+        }
+    }
+
+    /**
+     * @return number of durable writes made to the log, for tests
+     */
+    int getCommitCount() {
+        synchronized (mWriteLock) {
+            return mCommits;
+        }
+    }
+
+
+    /**
+     * logs every journaled remove, they can't be undone after this
+     */
+    private void retireJournal() {
+        retire(mJournalSize);
+    }
+
+    /**
+     * logs the count oldest journaled removes as one batch
+     */
+    private void retire(int count) {
+        if (count == 0) {
+            return;
+        }
+        int batch = beginBatch();
+        for (int i = 0; i < count; i++) {
+            int serialNumber = mJournalSerials[mJournalHead];
+            mJournalHead = (mJournalHead + 1) % JOURNAL_CAPACITY;
+            mJournalSize--;
+            mOrder.removeHidden(serialNumber);
+            append(OP_REMOVE, serialNumber, 0);
+        }
+        endBatch(batch);
+    }
+
+    /**
+     * runs on the writer thread, logs the removes whose undo window is over and waits for the next one
+     */
+    private synchronized void retireExpired() {
+        mJournalRetireScheduled = false;
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        while (expired < mJournalSize
+                && mJournalTimes[(mJournalHead + expired) % JOURNAL_CAPACITY] + UNDO_WINDOW_MS <= now) {
+            expired++;
+        }
+        retire(expired);
+        if (mJournalSize > 0) {
+            mJournalRetireScheduled = true;
+            WRITER.schedule(mRetireRunnable, mJournalTimes[mJournalHead] + UNDO_WINDOW_MS - now,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * reserves a batch record in front of the records about to be queued, caller holds the lock until endBatch.
+     * nothing queued between the two may open a batch of its own
+     * @return where the batch record is in mPending
+     */
+    private int beginBatch() {
+        if (mInBatch) {
+            throw new IllegalStateException("batch already open");
+        }
+        mInBatch = true;
+        append(OP_BATCH, 0, 0);
+        mBatchFirstRecord = mPendingRecords;
+        return mPendingLength - SHORT_RECORD_SIZE;
+    }
+
+    /**
+     * fills in the batch record, or takes it out again when there is nothing to group
+     */
+    private void endBatch(int batch) {
+        mInBatch = false;
+        int records = mPendingRecords - mBatchFirstRecord;
+        if (records <= 1) {
+            System.arraycopy(mPending, batch + SHORT_RECORD_SIZE, mPending, batch,
+                    mPendingLength - batch - SHORT_RECORD_SIZE);
+            mPendingLength -= SHORT_RECORD_SIZE;
+            mPendingRecords--;
+            mAppended--;
+            return;
+        }
+        ByteBuffer.wrap(mPending, batch, SHORT_RECORD_SIZE).put(OP_BATCH).putInt(records)
+                .putInt(crc(OP_BATCH, records, 0));
+    }
+
+    private void append(byte op, int serialNumber, int index) {
+        if (mPendingLength + LONG_RECORD_SIZE > mPending.length) {
+            mPending = Arrays.copyOf(mPending, mPending.length * 2);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(mPending, mPendingLength, LONG_RECORD_SIZE).put(op).putInt(serialNumber);
+        if (hasIndex(op)) {
+            buffer.putInt(index);
+        }
+        buffer.putInt(crc(op, serialNumber, index));
+        mPendingLength = buffer.position();
+        mPendingRecords++;
+        mAppended++;
+
+        if (!mCommitScheduled) {
+            mCommitScheduled = true;
+            WRITER.schedule(mCommitRunnable, mCommitWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * one write and one sync for everything queued, then compacts if asked to or the log has grown too long
+     */
+    private void commit(boolean compact) throws IOException {
+        ArrayList<PendingListener> done = new ArrayList<>();
+        IOException error = null;
+        IOException writeError = null;      // what the listeners hear, a failed compaction doesn't undo a write
+
+        synchronized (mWriteLock) {
+            byte[] batch;
+            int length;
+            int batchRecords;
+            long appended;
+            int[] snapshot = null;
+            synchronized (this) {
+                mCommitScheduled = false;
+                if (compact) {
+                    // logged in this batch, before the snapshot that covers them
+                    retireJournal();
+                }
+                if (mPendingLength == 0 && !compact) {
+                    return;
+                }
+                batch = mPending;
+                length = mPendingLength;
+                batchRecords = mPendingRecords;
+                appended = mAppended;
+                mPending = new byte[batch.length];
+                mPendingLength = 0;
+                mPendingRecords = 0;
+                int records = mLogRecords + batchRecords;
+                // a snapshot would make the journaled removes durable, so none is taken while there are any
+                if (compact || mJournalSize == 0 && records >= MIN_COMPACT_RECORDS && records > 2 * mOrder.size()) {
+                    // taken with the batch so the snapshot covers exactly the records written so far
+                    snapshot = serialNumbers();
+                }
+            }
+
+            boolean written = false;
+            if (mLog == null) {
+                error = writeError = new IOException("cart store is closed");
+            } else {
+                long start = mLog.getFilePointer();
+                try {
+                    if (length > 0) {
+                        mLog.write(batch, 0, length);
+                        mLog.getFD().sync();
+                        mLogRecords += batchRecords;
+                        mCommits++;
+                    }
+                    written = true;
+                    if (snapshot != null) {
+                        compact(snapshot);
+                    }
+                } catch (IOException e) {
+                    if (!written) {
+                        try {
+                            mLog.setLength(start);
+                            mLog.seek(start);
+                        } catch (IOException ignored) {
+                            // replay drops whatever partial batch is left
+                        }
+                        error = writeError = e;
+                    } else if (compact) {
+                        error = e;
+                    }
+                    // a failed automatic compaction leaves the log complete, it is retried on a later commit
+                }
+            }
+
+            synchronized (this) {
+                if (written) {
+                    mDurable = appended;
+                } else {
+                    // put the batch back in front of anything queued since, the next commit or flush retries it
+                    byte[] retry = new byte[Math.max(mPending.length, length + mPendingLength)];
+                    System.arraycopy(batch, 0, retry, 0, length);
+                    System.arraycopy(mPending, 0, retry, length, mPendingLength);
+                    mPending = retry;
+                    mPendingLength += length;
+                    mPendingRecords += batchRecords;
+                }
+                for (int i = mListeners.size() - 1; i >= 0; i--) {
+                    // on failure every waiting listener hears about it, not just the ones in this batch
+                    if (writeError != null || mListeners.get(i).mTarget <= appended) {
+                        done.add(mListeners.remove(i));
+                    }
+                }
+            }
+        }
+
+        for (int i = done.size() - 1; i >= 0; i--) {
+            done.get(i).mListener.onCommit(writeError);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * must hold mWriteLock with every record the serials reflect already in the log
+     */
+    private void compact(int[] serials) throws IOException {
+        int generation = mGeneration + 1;
+        writeSnapshot(generation, serials);
+        // the new snapshot is durable, a crash from here on leaves a log from the old generation,
+        // which recovery ignores
+        mGeneration = generation;
+        mLog.setLength(0);
+        writeLogHeader();
+        mLogRecords = 0;
+    }
+
+    private static boolean hasIndex(byte op) {
+        return op == OP_INSERT || op == OP_MOVE;
+    }
+
+    private int crc(byte op, int serialNumber, int index) {
+        mCrc.reset();
+        mCrc.update(op);
+        updateInt(mCrc, serialNumber);
+        if (hasIndex(op)) {
+            updateInt(mCrc, index);
+        }
+        return (int) mCrc.getValue();
+    }
+
+    private static void updateInt(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    private void readSnapshot() throws IOException {
+        File file = new File(mDir, SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < 20 || buffer.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("not a cart snapshot: " + file);
+        }
+        if (buffer.getInt() != VERSION) {
+            throw new IOException("unsupported cart snapshot version: " + file);
+        }
+        mCrc.reset();
+        mCrc.update(data, 0, data.length - 4);
+        if ((int) mCrc.getValue() != buffer.getInt(data.length - 4)) {
+            // snapshots are only ever swapped in whole, so this is disk corruption rather than a crash
+            throw new IOException("corrupt cart snapshot: " + file);
+        }
+        int generation = buffer.getInt();
+        int count = buffer.getInt();
+        if (count < 0 || count != (data.length - 20) / 4) {
+            throw new IOException("corrupt cart snapshot: " + file);
+        }
+        for (int i = 0; i < count; i++) {
+            if (!mOrder.insert(mOrder.size(), buffer.getInt())) {
+                throw new IOException("corrupt cart snapshot: " + file);
+            }
+        }
+        mGeneration = generation;
+    }
+
+    private void writeSnapshot(int generation, int[] serials) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(20 + serials.length * 4);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putInt(generation).putInt(serials.length);
+        for (int serial : serials) {
+            buffer.putInt(serial);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        File temp = new File(mDir, SNAPSHOT_TEMP_FILE);
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(buffer.array());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(new File(mDir, SNAPSHOT_FILE))) {
+            throw new IOException("can't replace cart snapshot in " + mDir);
+        }
+        // the rename lives in the directory, until that is synced a crash can bring back the old
+        // snapshot next to a log that has already moved on to the new generation
+        syncDirectory(mDir);
+    }
+
+    /**
+     * fsyncs the directory itself, android.system.Os because java.nio.file only arrived in API 26
+     */
+    private static void syncDirectory(File dir) throws IOException {
+        try {
+            FileDescriptor fd = Os.open(dir.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("can't sync cart directory: " + dir, e);
+        }
+    }
+
+    private void replayLog() throws IOException {
+        mLog = new RandomAccessFile(new File(mDir, LOG_FILE), "rw");
+        long length = mLog.length();
+        if (length < LOG_HEADER_SIZE || mLog.readInt() != LOG_MAGIC || mLog.readInt() != mGeneration) {
+            // new, torn header or left over from an older snapshot: start a fresh log for this generation
+            mLog.setLength(0);
+            writeLogHeader();
+            return;
+        }
+
+        // compaction keeps the log short enough to read in one go
+        byte[] records = new byte[(int) (length - LOG_HEADER_SIZE)];
+        mLog.readFully(records);
+        int replayed = replay(records, records.length);
+        if (replayed < 0) {
+            // a batch that doesn't fit the cart was half applied, start over and stop in front of it
+            mOrder.clear();
+            mLogRecords = 0;
+            readSnapshot();
+            replayed = replay(records, -replayed - 1);
+        }
+        long good = LOG_HEADER_SIZE + replayed;
+        if (good != length) {
+            // torn or corrupt tail from a crash mid write
+            mLog.setLength(good);
+        }
+        mLog.seek(good);
+    }
+
+    /**
+     * applies the records in records[0, limit) up to the first torn or corrupt one
+     * @return length of the good records, or -(start of the bad batch) - 1 when a batch failed after
+     * some of it was applied
+     */
+    private int replay(byte[] records, int limit) {
+        ByteBuffer buffer = ByteBuffer.wrap(records, 0, limit);
+        Record record = new Record();
+        int good = 0;
+        while (read(buffer, record)) {
+            if (record.mOp == OP_BATCH) {
+                // only applied once every record of the batch made it to disk intact
+                int count = record.mSerial;
+                int first = buffer.position();
+                boolean complete = count > 1;
+                for (int i = 0; complete && i < count; i++) {
+                    complete = read(buffer, record) && record.mOp != OP_BATCH;
+                }
+                if (!complete) {
+                    break;
+                }
+                buffer.position(first);
+                for (int i = 0; i < count; i++) {
+                    read(buffer, record);
+                    if (!apply(record.mOp, record.mSerial, record.mIndex)) {
+                        return i == 0 ? good : -good - 1;
+                    }
+                }
+                mLogRecords += count + 1;
+            } else {
+                if (!apply(record.mOp, record.mSerial, record.mIndex)) {
+                    break;
+                }
+                mLogRecords++;
+            }
+            good = buffer.position();
+        }
+        return good;
+    }
+
+    /**
+     * reads the record at the buffer's position into record
+     * @return false if it is cut short or its CRC doesn't match
+     */
+    private boolean read(ByteBuffer buffer, Record record) {
+        if (buffer.remaining() < SHORT_RECORD_SIZE) {
+            return false;
+        }
+        byte op = buffer.get();
+        if (hasIndex(op) && buffer.remaining() < LONG_RECORD_SIZE - 1) {
+            return false;
+        }
+        record.mOp = op;
+        record.mSerial = buffer.getInt();
+        record.mIndex = hasIndex(op) ? buffer.getInt() : 0;
+        return buffer.getInt() == crc(op, record.mSerial, record.mIndex);
+    }
+
+    /**
+     * replays one record
+     * @return false if it doesn't fit the cart, which means the log is corrupt from here on
+     */
+    private boolean apply(byte op, int serialNumber, int index) {
+        int size = mOrder.size();
+        switch (op) {
+            case OP_ADD:
+                return mOrder.insert(size, serialNumber);
+            case OP_REMOVE:
+                return mOrder.remove(serialNumber) >= 0;
+            case OP_INSERT:
+                return index >= 0 && index <= size && mOrder.insert(index, serialNumber);
+            case OP_MOVE:
+                return index >= 0 && index < size && mOrder.move(serialNumber, index) >= 0;
+            default:
+                return false;
+        }
+    }
+
+    private void writeLogHeader() throws IOException {
+        mLog.seek(0);
+        mLog.writeInt(LOG_MAGIC);
+        mLog.writeInt(mGeneration);
+    }
+
+
+    private static final class Record {
+        byte mOp;
+        int mSerial;       // the count for a batch
+        int mIndex;
+    }
+
+    private static final class PendingListener {
+        final long mTarget;
+        final OnCommitListener mListener;
+
+        PendingListener(long target, OnCommitListener listener) {
+            mTarget = target;
+            mListener = listener;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.neo.androidgesturespluralsight.util;
+
+
+import com.neo.androidgesturespluralsight.models.Money;
+
+/**
+ * running cart totals: grand total, and subtotal and item count per section, in cents.
+ * fed with every add, remove and move so reading a total never walks the cart, each change is O(1).
+ * not thread safe, CartManger updates it under its own lock and hands readers copies.
+ */
+public final class CartTotals {
+
+    private final long[] mSubtotals;
+    private final int[] mCounts;
+    private long mTotal;
+    private int mCount;
+
+
+    public CartTotals(int sections) {
+        mSubtotals = new long[sections];
+        mCounts = new int[sections];
+    }
+
+    private CartTotals(CartTotals totals) {
+        mSubtotals = totals.mSubtotals.clone();
+        mCounts = totals.mCounts.clone();
+        mTotal = totals.mTotal;
+        mCount = totals.mCount;
+    }
+
+    /**
+     * @return copy that can be handed to readers, O(number of sections)
+     */
+    public CartTotals copy() {
+        return new CartTotals(this);
+    }
+
+    public void onAdded(int section, Money price) {
+        long cents = price.getCents();
+        mSubtotals[section] = Money.add(mSubtotals[section], cents);
+        mTotal = Money.add(mTotal, cents);
+        mCounts[section]++;
+        mCount++;
+    }
+
+    public void onRemoved(int section, Money price) {
+        long cents = price.getCents();
+        mSubtotals[section] = Money.add(mSubtotals[section], -cents);
+        mTotal = Money.add(mTotal, -cents);
+        mCounts[section]--;
+        mCount--;
+    }
+
+    public void onMoved(int fromSection, int toSection, Money price) {
+        if (fromSection == toSection) {
+            return;
+        }
+        long cents = price.getCents();
+        mSubtotals[fromSection] = Money.add(mSubtotals[fromSection], -cents);
+        mSubtotals[toSection] = Money.add(mSubtotals[toSection], cents);
+        mCounts[fromSection]--;
+        mCounts[toSection]++;
+    }
+
+    public Money getTotal() {
+        return Money.ofCents(mTotal);
+    }
+
+    public int getItemCount() {
+        return mCount;
+    }
+
+    public Money getSubtotal(int section) {
+        return Money.ofCents(mSubtotals[section]);
+    }
+
+    public int getItemCount(int section) {
+        return mCounts[section];
+    }
+}
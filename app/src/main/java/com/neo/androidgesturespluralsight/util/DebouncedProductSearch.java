@@ -0,0 +1,77 @@
+package com.neo.androidgesturespluralsight.util;
+
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.neo.androidgesturespluralsight.models.Product;
+import com.neo.androidgesturespluralsight.resources.ProductSearchIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * runs search queries against a ProductSearchIndex once the user stops typing for the debounce delay.
+ * queries are fast enough to run on the main thread, so results are delivered there.
+ */
+public class DebouncedProductSearch {
+
+    public interface OnSearchResultsListener {
+        /**
+         * @param query : the query that was run, empty when the search was cleared
+         * @param results : matching products, a new list for every query
+         */
+        void onSearchResults(String query, List<Product> results);
+    }
+
+    private static final long DEFAULT_DELAY_MS = 200;
+    private static final int MAX_RESULTS = 500;
+
+    private final ProductSearchIndex mIndex;
+    private final OnSearchResultsListener mListener;
+    private final long mDelayMs;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private String mPendingQuery = "";
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            String query = mPendingQuery;
+            ArrayList<Product> results = new ArrayList<>();
+            mIndex.search(query, MAX_RESULTS, results);
+            mListener.onSearchResults(query, results);
+        }
+    };
+
+
+    public DebouncedProductSearch(ProductSearchIndex index, OnSearchResultsListener listener) {
+        this(index, DEFAULT_DELAY_MS, listener);
+    }
+
+    public DebouncedProductSearch(ProductSearchIndex index, long delayMs, OnSearchResultsListener listener) {
+        mIndex = index;
+        mDelayMs = delayMs;
+        mListener = listener;
+    }
+
+    /**
+     * schedules a search for the query, replacing any search that hasn't run yet
+     */
+    public void setQuery(String query) {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mPendingQuery = query == null ? "" : query.trim();
+        if (mPendingQuery.isEmpty()) {
+            // clearing the search shouldn't wait for the debounce
+            mSearchRunnable.run();
+            return;
+        }
+        mHandler.postDelayed(mSearchRunnable, mDelayMs);
+    }
+
+    /**
+     * drops any pending search, call when the screen goes away
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(mSearchRunnable);
+    }
+}
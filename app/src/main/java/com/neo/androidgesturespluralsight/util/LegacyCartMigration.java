@@ -0,0 +1,153 @@
+package com.neo.androidgesturespluralsight.util;
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * one time move of a cart saved by older versions (a string set in the shopping_cart SharedPreferences
+ * file) into the cart store.
+ *
+ * the set is streamed with {@link LegacyCartReader} and handed over in chunks. after each chunk is
+ * durable the number of entries done so far is saved in a checkpoint file, so a migration that was
+ * killed picks up after the last chunk instead of starting over, and entries already moved (and maybe
+ * removed again by the user since) aren't added twice. a crash between a chunk and its checkpoint
+ * repeats that one chunk, which is harmless because adding what is already in the cart does nothing.
+ * the legacy file is deleted once everything is moved, after that a run finds nothing to do.
+ *
+ * checkpoint file: legacy file length, legacy file last modified, entries done (DONE once finished).
+ * the first two tell a checkpoint that belongs to a different legacy file, which starts over.
+ */
+final class LegacyCartMigration {
+
+    static final int CHUNK_SIZE = 1024;
+    private static final int DONE = -1;
+
+    /**
+     * where the serial numbers go
+     */
+    interface Target {
+        /**
+         * adds serialNumbers[0, count) to the end of the cart, durably, before returning
+         */
+        void addAll(int[] serialNumbers, int count) throws IOException;
+    }
+
+    private final File mLegacyFile;
+    private final File mCheckpointFile;
+    private final String mSetName;
+
+    LegacyCartMigration(File legacyFile, File checkpointFile, String setName) {
+        mLegacyFile = legacyFile;
+        mCheckpointFile = checkpointFile;
+        mSetName = setName;
+    }
+
+    /**
+     * @return false if there is nothing (left) to migrate, the cheap check to make on the main thread
+     */
+    boolean isNeeded() {
+        return mLegacyFile.exists();
+    }
+
+    /**
+     * moves whatever is left of the legacy cart into the target, blocking. safe to run again after
+     * it failed or the process died part way
+     * @return number of entries handed to the target by this run
+     */
+    int run(Target target) throws IOException {
+        if (!mLegacyFile.exists()) {
+            mCheckpointFile.delete();
+            return 0;
+        }
+        long length = mLegacyFile.length();
+        long lastModified = mLegacyFile.lastModified();
+        int done = readCheckpoint(length, lastModified);
+
+        int moved = 0;
+        if (done != DONE) {
+            int[] chunk = new int[CHUNK_SIZE];
+            int count = 0;
+            int seen = 0;
+            LegacyCartReader reader = new LegacyCartReader(new InputStreamReader(
+                    new BufferedInputStream(new FileInputStream(mLegacyFile)), Charset.forName("UTF-8")), mSetName);
+            try {
+                while (reader.next()) {
+                    if (seen++ < done) {
+                        continue;       // moved by an earlier run
+                    }
+                    chunk[count++] = reader.value();
+                    if (count == CHUNK_SIZE) {
+                        target.addAll(chunk, count);
+                        moved += count;
+                        done = seen;
+                        writeCheckpoint(length, lastModified, done);
+                        count = 0;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            if (count > 0) {
+                target.addAll(chunk, count);
+                moved += count;
+            }
+            writeCheckpoint(length, lastModified, DONE);
+        }
+
+        // a kill from here on finds the DONE checkpoint and only finishes the clean up
+        File backup = new File(mLegacyFile.getPath() + ".bak");     // SharedPreferences' own backup copy
+        if ((!mLegacyFile.delete() && mLegacyFile.exists()) || (!backup.delete() && backup.exists())) {
+            throw new IOException("can't delete " + mLegacyFile);
+        }
+        mCheckpointFile.delete();
+        return moved;
+    }
+
+    /**
+     * @return entries done according to the checkpoint, 0 if there is none for this legacy file
+     */
+    private int readCheckpoint(long length, long lastModified) {
+        if (!mCheckpointFile.exists()) {
+            return 0;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(mCheckpointFile));
+            try {
+                if (in.readLong() == length && in.readLong() == lastModified) {
+                    return in.readInt();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // unreadable, start over. checkpoints are swapped in with a rename so this takes disk trouble
+        }
+        return 0;
+    }
+
+    private void writeCheckpoint(long length, long lastModified, int done) throws IOException {
+        File temp = new File(mCheckpointFile.getPath() + ".tmp");
+        FileOutputStream file = new FileOutputStream(temp);
+        try {
+            DataOutputStream out = new DataOutputStream(file);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(done);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        if (!temp.renameTo(mCheckpointFile)) {
+            throw new IOException("can't replace " + mCheckpointFile);
+        }
+    }
+}
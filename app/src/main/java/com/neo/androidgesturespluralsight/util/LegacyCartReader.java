@@ -0,0 +1,186 @@
+package com.neo.androidgesturespluralsight.util;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * streams the serial numbers out of one string set of a SharedPreferences xml file, e.g.
+ *
+ *  <map>
+ *      <set name="cart_items">
+ *          <string>1234</string>
+ *          ...
+ *      </set>
+ *  </map>
+ *
+ * reads through a fixed buffer and parses numbers in place, so memory stays the same however big the
+ * set is and nothing is allocated per entry. SharedPreferences is no help here, it loads the whole
+ * file into a map of strings. entries that aren't ints are skipped, everything outside the set is ignored.
+ */
+final class LegacyCartReader implements Closeable {
+
+    private static final int MAX_NAME_LENGTH = 64;      // longer tag names and attributes are cut, none we look for are that long
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[8192];
+    private int mPosition;
+    private int mLimit;
+
+    private final String mSetAttribute;                // name="<set name>"
+    private final StringBuilder mName = new StringBuilder(MAX_NAME_LENGTH);
+    private final StringBuilder mAttributes = new StringBuilder(MAX_NAME_LENGTH);
+    private boolean mSelfClosing;
+
+    private boolean mInSet;
+    private boolean mDone;
+    private int mValue;
+
+
+    LegacyCartReader(Reader reader, String setName) {
+        mReader = reader;
+        mSetAttribute = "name=\"" + setName + "\"";
+    }
+
+    /**
+     * moves to the next entry of the set
+     * @return false once the set (or the file) has ended
+     */
+    boolean next() throws IOException {
+        while (!mDone) {
+            if (!skipTo('<')) {
+                mDone = true;
+                return false;
+            }
+            readTag();
+            if (!mInSet) {
+                if (equals(mName, "set") && mAttributes.indexOf(mSetAttribute) >= 0) {
+                    mInSet = !mSelfClosing;
+                    mDone = mSelfClosing;      // <set name="cart_items" /> is an empty set
+                }
+            } else if (equals(mName, "/set")) {
+                mDone = true;
+            } else if (equals(mName, "string") && !mSelfClosing && readInt()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the entry next() moved to
+     */
+    int value() {
+        return mValue;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+
+    /**
+     * @return false at the end of the file
+     */
+    private boolean skipTo(char c) throws IOException {
+        while (true) {
+            if (mPosition == mLimit && !fill()) {
+                return false;
+            }
+            if (mBuffer[mPosition++] == c) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * reads the tag after a '<' up to and including its '>', into mName and mAttributes
+     */
+    private void readTag() throws IOException {
+        mName.setLength(0);
+        mAttributes.setLength(0);
+        mSelfClosing = false;
+        boolean inName = true;
+        char previous = 0;
+        while (mPosition < mLimit || fill()) {
+            char c = mBuffer[mPosition++];
+            if (c == '>') {
+                mSelfClosing = previous == '/';
+                return;
+            }
+            if (inName && Character.isWhitespace(c)) {
+                inName = false;
+            } else if (inName) {
+                if (c != '/' || mName.length() == 0) {
+                    append(mName, c);
+                }
+            } else {
+                append(mAttributes, c);
+            }
+            previous = c;
+        }
+    }
+
+    /**
+     * parses the text up to the next '<' (the closing tag, which the next call skips)
+     * @return false if it isn't an int
+     */
+    private boolean readInt() throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int digits = 0;
+        boolean valid = true;
+        while (mPosition < mLimit || fill()) {
+            char c = mBuffer[mPosition];
+            if (c == '<') {
+                break;
+            }
+            mPosition++;
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+                valid &= digits <= 10;
+            } else if (c == '-' && digits == 0 && !negative) {
+                negative = true;
+            } else if (!Character.isWhitespace(c)) {
+                valid = false;
+            }
+        }
+        value = negative ? -value : value;
+        if (!valid || digits == 0 || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return false;
+        }
+        mValue = (int) value;
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        int read = mReader.read(mBuffer, 0, mBuffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        mPosition = 0;
+        mLimit = read;
+        return true;
+    }
+
+    private static void append(StringBuilder builder, char c) {
+        if (builder.length() < MAX_NAME_LENGTH) {
+            builder.append(c);
+        }
+    }
+
+    private static boolean equals(StringBuilder builder, String string) {
+        if (builder.length() != string.length()) {
+            return false;
+        }
+        for (int i = 0; i < string.length(); i++) {
+            if (builder.charAt(i) != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,474 @@
+package com.neo.androidgesturespluralsight.util;
+
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.collection.SparseArrayCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import com.neo.androidgesturespluralsight.models.Product;
+
+import java.util.AbstractList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * read only list over a catalog that is loaded in fixed size pages on a background thread.
+ *
+ * get() returns null for a position whose page isn't loaded yet and asks for that page, the adapter
+ * shows a placeholder until onPageLoaded is called. the RecyclerView reports what is on screen
+ * through onViewportChanged, pages within the prefetch distance ahead of it are loaded early and
+ * pages far away from it are dropped, so memory stays bounded however far the user scrolls. a page
+ * that fails to load is tried again after a delay that doubles each time, as long as it is still
+ * near the viewport, and its placeholders are rebound through onPageLoaded once it succeeds.
+ *
+ * refresh() swaps in a new loader: the pages in memory are reloaded and diffed against what is shown
+ * on the background thread, then dispatched as granular move/insert/remove/change updates.
+ *
+ * must only be used from the main thread.
+ */
+public class PagedProductList extends AbstractList<Product> {
+
+    private static final String TAG = "PagedProductList";
+
+    /**
+     * source of the products, called on a background thread
+     */
+    public interface PageLoader {
+        int getCount();
+
+        /**
+         * called on the main thread for positions that may not be loaded, so it has to be a cheap
+         * lookup (an id column or index) rather than loading the product
+         */
+        int getSerialNumber(int position);
+
+        /**
+         * fills out with the products starting at start
+         * @return number of products written
+         */
+        int loadPage(int start, Product[] out);
+    }
+
+    public interface OnPageLoadedListener {
+        /**
+         * called on the main thread once positions [start, start + count) can be read
+         */
+        void onPageLoaded(int start, int count);
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 30;
+    static final long RETRY_DELAY_MS = 1000;
+    static final long MAX_RETRY_DELAY_MS = 30000;
+
+    // single loader thread, pages come back in the order they were asked for
+    private static final Executor LOADER = Executors.newSingleThreadExecutor();
+
+    private PageLoader mLoader;
+    private int mCount;
+    private int mGeneration;                // bumped by refresh() so pages from the old loader are dropped
+    private boolean mRefreshing;            // page loads are held back until the refresh is dispatched
+    private final int mPageSize;
+    private final int mPrefetchDistance;    // items past the viewport to load ahead of time
+    private final int mKeepPages;           // pages either side of the viewport kept in memory
+    private final Executor mBackground;
+    private final Handler mHandler;
+    // plain java sparse arrays, unlike android.util.SparseArray they also work in JVM tests
+    private final SparseArrayCompat<Product[]> mPages = new SparseArrayCompat<>();
+    private final SparseArrayCompat<Boolean> mLoading = new SparseArrayCompat<>();
+    private final SparseArrayCompat<Integer> mFailures = new SparseArrayCompat<>();     // failed loads in a row per page
+    private int mKeepFrom = 0;                      // pages outside these are dropped and not retried
+    private int mKeepTo = Integer.MAX_VALUE;
+    private OnPageLoadedListener mListener;
+    private boolean mReleased;
+
+
+    public PagedProductList(PageLoader loader) {
+        this(loader, DEFAULT_PAGE_SIZE, DEFAULT_PAGE_SIZE, 3);
+    }
+
+    /**
+     * @param pageSize : number of products loaded at once
+     * @param prefetchDistance : how many items past the last visible one should already be loaded
+     * @param keepPages : pages kept either side of the visible ones before they are dropped
+     */
+    public PagedProductList(PageLoader loader, int pageSize, int prefetchDistance, int keepPages) {
+        this(loader, pageSize, prefetchDistance, keepPages, LOADER, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * @param background : where pages are loaded
+     * @param handler : where results are delivered, the main thread
+     */
+    PagedProductList(PageLoader loader, int pageSize, int prefetchDistance, int keepPages,
+                     Executor background, Handler handler) {
+        mBackground = background;
+        mHandler = handler;
+        mLoader = loader;
+        mCount = loader.getCount();
+        mPageSize = pageSize;
+        mPrefetchDistance = prefetchDistance;
+        mKeepPages = Math.max(keepPages, 1 + prefetchDistance / pageSize);
+    }
+
+    /**
+     * loader over products already in memory, e.g. the featured products
+     */
+    public static PageLoader arrayLoader(final Product[] products) {
+        return new PageLoader() {
+            @Override
+            public int getCount() {
+                return products.length;
+            }
+
+            @Override
+            public int getSerialNumber(int position) {
+                return products[position].getSerial_number();
+            }
+
+            @Override
+            public int loadPage(int start, Product[] out) {
+                int count = Math.max(0, Math.min(out.length, products.length - start));
+                System.arraycopy(products, start, out, 0, count);
+                return count;
+            }
+        };
+    }
+
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return the product or null if its page isn't loaded yet, in which case the page gets loaded
+     */
+    @Override
+    public Product get(int position) {
+        if (position < 0 || position >= mCount) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + mCount);
+        }
+        int page = position / mPageSize;
+        Product[] products = mPages.get(page);
+        if (products == null) {
+            loadPage(page);
+            return null;
+        }
+        return products[position - page * mPageSize];
+    }
+
+    /**
+     * @return serial number of the product at position, known whether or not its page is loaded.
+     * use it as the item id so a placeholder keeps its id when the product arrives
+     */
+    public int getSerialNumber(int position) {
+        if (position < 0 || position >= mCount) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + mCount);
+        }
+        return mLoader.getSerialNumber(position);
+    }
+
+    @Override
+    public int size() {
+        return mCount;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * @return number of pages currently held in memory
+     */
+    public int getLoadedPageCount() {
+        return mPages.size();
+    }
+
+    /**
+     * tells the list which positions are on screen so it can prefetch ahead and drop far pages
+     */
+    public void onViewportChanged(int firstVisible, int lastVisible) {
+        if (mCount == 0 || firstVisible < 0 || lastVisible < firstVisible) {
+            return;
+        }
+        int firstPage = firstVisible / mPageSize;
+        int lastPage = Math.min(lastVisible + mPrefetchDistance, mCount - 1) / mPageSize;
+        for (int page = firstPage; page <= lastPage; page++) {
+            loadPage(page);
+        }
+
+        // drop pages that are far from the viewport, they are loaded again if the user scrolls back
+        mKeepFrom = firstPage - mKeepPages;
+        mKeepTo = lastPage + mKeepPages;
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            int page = mPages.keyAt(i);
+            if (page < mKeepFrom || page > mKeepTo) {
+                mPages.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * stops delivering pages, call when the list is no longer shown
+     */
+    public void release() {
+        mReleased = true;
+        mHandler.removeCallbacksAndMessages(null);
+        mPages.clear();
+        mLoading.clear();
+        mFailures.clear();
+    }
+
+    /**
+     * replaces the loader with one returning refreshed results. pages in memory are reloaded from it
+     * and diffed against the current pages in the background, only positions whose product actually
+     * changed are rebound.
+     * @param updateCallback : receives the granular updates, e.g. an AdapterListUpdateCallback
+     * @param onComplete : run on the main thread once the updates are dispatched, may be null
+     */
+    public void refresh(final PageLoader loader, final ListUpdateCallback updateCallback, final Runnable onComplete) {
+        final int generation = ++mGeneration;
+        mRefreshing = true;
+        final int oldCount = mCount;
+        final int[] pages = new int[mPages.size()];
+        final Product[][] oldPages = new Product[pages.length][];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = mPages.keyAt(i);
+            oldPages[i] = mPages.valueAt(i);
+        }
+
+        mBackground.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int newCount = loader.getCount();
+                final int sharedCount = Math.min(oldCount, newCount);
+                final Product[][] newPages = new Product[pages.length][];
+                final DiffUtil.DiffResult[] diffs = new DiffUtil.DiffResult[pages.length];
+                try {
+                    for (int i = 0; i < pages.length; i++) {
+                        int start = pages[i] * mPageSize;
+                        if (start >= newCount) {
+                            continue;       // page is past the end of the new results
+                        }
+                        newPages[i] = new Product[Math.min(mPageSize, newCount - start)];
+                        loader.loadPage(start, newPages[i]);
+                        // diff only the part that exists in both, a change in size is one insert or remove at the end
+                        int length = Math.max(0, Math.min(mPageSize, sharedCount - start));
+                        diffs[i] = DiffUtil.calculateDiff(new PageDiffCallback(oldPages[i], newPages[i], length));
+                    }
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "refresh: failed to reload pages", e);
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mReleased || generation != mGeneration) {
+                            return;     // a newer refresh replaced this one
+                        }
+                        mLoader = loader;
+                        mCount = newCount;
+                        mFailures.clear();
+                        mPages.clear();
+                        for (int i = 0; i < pages.length; i++) {
+                            if (newPages[i] != null && diffs[i] != null) {
+                                mPages.put(pages[i], newPages[i]);
+                            }
+                        }
+
+                        // size change first, every page diff below keeps the size of its page
+                        if (newCount > oldCount) {
+                            updateCallback.onInserted(oldCount, newCount - oldCount);
+                        } else if (newCount < oldCount) {
+                            updateCallback.onRemoved(newCount, oldCount - newCount);
+                        }
+                        for (int i = 0; i < pages.length; i++) {
+                            if (diffs[i] != null) {
+                                diffs[i].dispatchUpdatesTo(new OffsetListUpdateCallback(updateCallback, pages[i] * mPageSize));
+                            } else if (pages[i] * mPageSize < sharedCount) {
+                                // page failed to reload, rebind it as placeholders and load it again on bind
+                                int start = pages[i] * mPageSize;
+                                updateCallback.onChanged(start, Math.min(mPageSize, sharedCount - start), null);
+                            }
+                        }
+                        mRefreshing = false;
+                        // pages asked for during the refresh (or in flight from the old loader) load now
+                        int[] waiting = new int[mLoading.size()];
+                        for (int i = 0; i < waiting.length; i++) {
+                            waiting[i] = mLoading.keyAt(i);
+                        }
+                        mLoading.clear();
+                        for (int page : waiting) {
+                            if (page * mPageSize < mCount) {
+                                loadPage(page);
+                            }
+                        }
+                        if (onComplete != null) {
+                            onComplete.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void loadPage(final int page) {
+        if (mReleased || mPages.get(page) != null || mLoading.get(page) != null) {
+            return;
+        }
+        mLoading.put(page, Boolean.TRUE);
+        if (mRefreshing) {
+            return;
+        }
+        final int generation = mGeneration;
+        final PageLoader loader = mLoader;
+        final int start = page * mPageSize;
+        final Product[] products = new Product[Math.min(mPageSize, mCount - start)];
+        mBackground.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int count;
+                try {
+                    count = loader.loadPage(start, products);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "loadPage: failed to load page " + page, e);
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onPageFailed(generation, page);
+                        }
+                    });
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(generation, page, products, count);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int generation, int page, Product[] products, int count) {
+        if (mReleased || generation != mGeneration) {
+            return;
+        }
+        mLoading.remove(page);
+        mFailures.remove(page);
+        mPages.put(page, products);
+        if (mListener != null && count > 0) {
+            mListener.onPageLoaded(page * mPageSize, count);
+        }
+    }
+
+    /**
+     * tries the page again later. nothing else would, its placeholders are already bound and only
+     * get rebound once the page arrives
+     */
+    private void onPageFailed(final int generation, final int page) {
+        if (mReleased || generation != mGeneration) {
+            return;
+        }
+        mLoading.remove(page);
+        int failures = mFailures.get(page, 0) + 1;
+        mFailures.put(page, failures);
+        long delay = Math.min(RETRY_DELAY_MS << Math.min(failures - 1, 16), MAX_RETRY_DELAY_MS);
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                // scrolled far away in the meantime, it is loaded on the next bind if the user comes back
+                if (!mReleased && generation == mGeneration && page >= mKeepFrom && page <= mKeepTo
+                        && page * mPageSize < mCount) {
+                    loadPage(page);
+                }
+            }
+        }, delay);
+    }
+
+
+    /**
+     * compares the first length products of an old and a reloaded page, products are the same item
+     * when their serial numbers match and only need rebinding when what the grid shows changed
+     */
+    private static class PageDiffCallback extends DiffUtil.Callback {
+
+        private final Product[] mOld;
+        private final Product[] mNew;
+        private final int mLength;
+
+        PageDiffCallback(Product[] oldProducts, Product[] newProducts, int length) {
+            mOld = oldProducts;
+            mNew = newProducts;
+            mLength = length;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mLength;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mLength;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            Product oldProduct = mOld[oldItemPosition];
+            Product newProduct = mNew[newItemPosition];
+            if (oldProduct == null || newProduct == null) {
+                return oldProduct == newProduct;
+            }
+            return oldProduct.getSerial_number() == newProduct.getSerial_number();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            Product oldProduct = mOld[oldItemPosition];
+            Product newProduct = mNew[newItemPosition];
+            if (oldProduct == newProduct) {
+                return true;
+            }
+            return oldProduct.getImage() == newProduct.getImage()
+                    && oldProduct.getTitle().equals(newProduct.getTitle())
+                    && oldProduct.getPrice().equals(newProduct.getPrice());
+        }
+    }
+
+
+    /**
+     * shifts the positions of a page diff to where the page starts in the whole list
+     */
+    private static class OffsetListUpdateCallback implements ListUpdateCallback {
+
+        private final ListUpdateCallback mCallback;
+        private final int mOffset;
+
+        OffsetListUpdateCallback(ListUpdateCallback callback, int offset) {
+            mCallback = callback;
+            mOffset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mCallback.onInserted(position + mOffset, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mCallback.onRemoved(position + mOffset, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mCallback.onMoved(fromPosition + mOffset, toPosition + mOffset);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mCallback.onChanged(position + mOffset, count, payload);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.neo.androidgesturespluralsight.util;
+
+
+import java.util.Random;
+
+/**
+ * ordered list of unique serial numbers with O(log n) insert, remove, move, get and indexOf.
+ *
+ * it is an implicit treap: nodes are ordered by position rather than by key and every node knows the
+ * size of its subtree, so the node at an index is found by walking down and the index of a node by
+ * walking up its parent links. an open addressing table of the nodes, keyed by their serial, makes
+ * lookups by serial O(1) without boxing the key (the nodes hold the key, an empty slot is null).
+ *
+ * negative serials are section markers (the cart headers). every subtree also counts its markers,
+ * which gives the section of any position in O(log n).
+ *
+ * entries can be hidden: a hidden entry keeps its place in the tree but takes no position, it isn't
+ * counted, found or listed. unhiding puts it back exactly where it was in O(log n), whatever was added
+ * or removed around it meanwhile. inserting anywhere but the end, and moving, need the list to have no
+ * hidden entries, otherwise it is ambiguous which side of a hidden entry a position is on.
+ */
+final class SerialOrderTree {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private Node[] mNodes = new Node[MIN_CAPACITY];     // linear probing, at most half full
+    private int mNodeCount;
+    private int mHiddenCount;
+    private final Random mRandom = new Random(0x5EED);
+    private Node mRoot;
+
+
+    int size() {
+        return size(mRoot);
+    }
+
+    boolean contains(int serialNumber) {
+        Node node = find(serialNumber);
+        return node != null && !node.mHidden;
+    }
+
+    boolean isHidden(int serialNumber) {
+        Node node = find(serialNumber);
+        return node != null && node.mHidden;
+    }
+
+    int get(int index) {
+        checkIndex(index, size());
+        Node node = mRoot;
+        while (true) {
+            int leftSize = size(node.mLeft);
+            if (index < leftSize) {
+                node = node.mLeft;
+            } else if (index == leftSize && !node.mHidden) {
+                return node.mSerial;
+            } else {
+                index -= leftSize + weight(node);
+                node = node.mRight;
+            }
+        }
+    }
+
+    /**
+     * @return position of the serial number, or -1 if it isn't in the list or is hidden
+     */
+    int indexOf(int serialNumber) {
+        Node node = find(serialNumber);
+        if (node == null || node.mHidden) {
+            return -1;
+        }
+        return positionOf(node);
+    }
+
+    /**
+     * @return false if the serial number is already in the list, hidden or not
+     */
+    boolean insert(int index, int serialNumber) {
+        checkIndex(index, size() + 1);
+        if (index != size()) {
+            checkNoneHidden();
+        }
+        if (find(serialNumber) != null) {
+            return false;
+        }
+        Node node = new Node(serialNumber, mRandom.nextInt());
+        put(node);
+        if (index == size()) {
+            // after everything, hidden entries at the end included
+            mRoot = merge(mRoot, node);
+        } else {
+            Node[] parts = split(mRoot, index);
+            mRoot = merge(merge(parts[0], node), parts[1]);
+        }
+        mRoot.mParent = null;
+        return true;
+    }
+
+    /**
+     * @return position the serial number was removed from, or -1 if it wasn't in the list
+     */
+    int remove(int serialNumber) {
+        int index = indexOf(serialNumber);
+        if (index < 0) {
+            return -1;
+        }
+        delete(take(serialNumber));
+        return index;
+    }
+
+    /**
+     * takes the entry out of the list but keeps its place for {@link #unhide}
+     * @return position it had, or -1 if it isn't in the list or already hidden
+     */
+    int hide(int serialNumber) {
+        int index = indexOf(serialNumber);
+        if (index < 0) {
+            return -1;
+        }
+        Node node = find(serialNumber);
+        node.mHidden = true;
+        mHiddenCount++;
+        updateUp(node);
+        return index;
+    }
+
+    /**
+     * @return position the entry is back at, or -1 if it isn't hidden
+     */
+    int unhide(int serialNumber) {
+        Node node = find(serialNumber);
+        if (node == null || !node.mHidden) {
+            return -1;
+        }
+        node.mHidden = false;
+        mHiddenCount--;
+        updateUp(node);
+        return positionOf(node);
+    }
+
+    /**
+     * drops a hidden entry for good
+     * @return false if it isn't hidden
+     */
+    boolean removeHidden(int serialNumber) {
+        if (!isHidden(serialNumber)) {
+            return false;
+        }
+        mHiddenCount--;
+        delete(take(serialNumber));
+        return true;
+    }
+
+    /**
+     * moves the serial number so it ends up at toIndex, the node itself is reused
+     * @return position it was moved from, or -1 if it isn't in the list
+     */
+    int move(int serialNumber, int toIndex) {
+        int from = indexOf(serialNumber);
+        if (from < 0) {
+            return -1;
+        }
+        checkIndex(toIndex, size());
+        checkNoneHidden();
+        Node[] parts = split(mRoot, from);
+        Node[] rest = split(parts[1], 1);
+        Node node = rest[0];
+        Node[] target = split(merge(parts[0], rest[1]), toIndex);
+        mRoot = merge(merge(target[0], node), target[1]);
+        mRoot.mParent = null;
+        return from;
+    }
+
+    /**
+     * @return number of section markers at positions [0, end)
+     */
+    int markersBefore(int end) {
+        checkIndex(end, size() + 1);
+        int markers = 0;
+        Node node = mRoot;
+        while (node != null && end > 0) {
+            int leftSize = size(node.mLeft);
+            if (end <= leftSize) {
+                node = node.mLeft;
+            } else {
+                markers += markers(node.mLeft) + (isMarker(node) ? 1 : 0);
+                end -= leftSize + weight(node);
+                node = node.mRight;
+            }
+        }
+        return markers;
+    }
+
+    /**
+     * @return serial numbers in list order, hidden ones left out
+     */
+    int[] toArray() {
+        int[] out = new int[size()];
+        fill(mRoot, out, 0);
+        return out;
+    }
+
+    void clear() {
+        mNodes = new Node[MIN_CAPACITY];
+        mNodeCount = 0;
+        mHiddenCount = 0;
+        mRoot = null;
+    }
+
+
+    private Node find(int serialNumber) {
+        int mask = mNodes.length - 1;
+        for (int slot = mix(serialNumber) & mask; ; slot = (slot + 1) & mask) {
+            Node node = mNodes[slot];
+            if (node == null || node.mSerial == serialNumber) {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * adds a node whose serial isn't in the table yet
+     */
+    private void put(Node node) {
+        if (++mNodeCount * 2 > mNodes.length) {
+            Node[] old = mNodes;
+            mNodes = new Node[old.length * 2];
+            for (Node moving : old) {
+                if (moving != null) {
+                    mNodes[freeSlot(moving.mSerial)] = moving;
+                }
+            }
+        }
+        mNodes[freeSlot(node.mSerial)] = node;
+    }
+
+    private int freeSlot(int serialNumber) {
+        int mask = mNodes.length - 1;
+        int slot = mix(serialNumber) & mask;
+        while (mNodes[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * takes the node out of the table, shifting later nodes of its probe run back so no lookup stops
+     * short at the hole. the table never shrinks
+     */
+    private Node take(int serialNumber) {
+        int mask = mNodes.length - 1;
+        int slot = mix(serialNumber) & mask;
+        while (mNodes[slot].mSerial != serialNumber) {
+            slot = (slot + 1) & mask;
+        }
+        Node taken = mNodes[slot];
+        int hole = slot;
+        for (int next = (hole + 1) & mask; mNodes[next] != null; next = (next + 1) & mask) {
+            int home = mix(mNodes[next].mSerial) & mask;
+            // move it into the hole unless its home slot lies cyclically in (hole, next]
+            if (hole <= next ? home <= hole || home > next : home <= hole && home > next) {
+                mNodes[hole] = mNodes[next];
+                hole = next;
+            }
+        }
+        mNodes[hole] = null;
+        mNodeCount--;
+        return taken;
+    }
+
+    // same scrambling as ProductIndex, cart serials tend to be sequential
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * split counts nodes, not positions, which is only the same while every node weighs 1
+     */
+    private void checkNoneHidden() {
+        if (mHiddenCount > 0) {
+            throw new IllegalStateException(mHiddenCount + " hidden entries, positions are ambiguous");
+        }
+    }
+
+
+    private int positionOf(Node node) {
+        int index = size(node.mLeft);
+        while (node.mParent != null) {
+            if (node == node.mParent.mRight) {
+                index += size(node.mParent.mLeft) + weight(node.mParent);
+            }
+            node = node.mParent;
+        }
+        return index;
+    }
+
+    /**
+     * unlinks the node by putting its merged subtrees in its place, O(log n)
+     */
+    private void delete(Node node) {
+        Node merged = merge(node.mLeft, node.mRight);
+        Node parent = node.mParent;
+        if (merged != null) {
+            merged.mParent = parent;
+        }
+        if (parent == null) {
+            mRoot = merged;
+        } else {
+            if (parent.mLeft == node) {
+                parent.mLeft = merged;
+            } else {
+                parent.mRight = merged;
+            }
+            updateUp(parent);
+        }
+    }
+
+    private static void updateUp(Node node) {
+        for (; node != null; node = node.mParent) {
+            update(node);
+        }
+    }
+
+    private static int fill(Node node, int[] out, int pos) {
+        while (node != null) {
+            pos = fill(node.mLeft, out, pos);
+            if (!node.mHidden) {
+                out[pos++] = node.mSerial;
+            }
+            node = node.mRight;
+        }
+        return pos;
+    }
+
+    /**
+     * @return {first count nodes, the rest}. counts a node as 1 whether it is hidden or not, callers
+     * that pass a position make sure nothing is hidden (checkNoneHidden)
+     */
+    private static Node[] split(Node node, int count) {
+        if (node == null) {
+            return new Node[2];
+        }
+        Node[] parts;
+        if (size(node.mLeft) >= count) {
+            parts = split(node.mLeft, count);
+            node.mLeft = parts[1];
+            update(node);
+            parts[1] = node;
+        } else {
+            parts = split(node.mRight, count - size(node.mLeft) - 1);
+            node.mRight = parts[0];
+            update(node);
+            parts[0] = node;
+        }
+        node.mParent = null;
+        return parts;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.mPriority > right.mPriority) {
+            left.mRight = merge(left.mRight, right);
+            update(left);
+            return left;
+        } else {
+            right.mLeft = merge(left, right.mLeft);
+            update(right);
+            return right;
+        }
+    }
+
+    private static void update(Node node) {
+        node.mSize = weight(node) + size(node.mLeft) + size(node.mRight);
+        node.mMarkers = (isMarker(node) ? 1 : 0) + markers(node.mLeft) + markers(node.mRight);
+        if (node.mLeft != null) {
+            node.mLeft.mParent = node;
+        }
+        if (node.mRight != null) {
+            node.mRight.mParent = node;
+        }
+    }
+
+    private static int weight(Node node) {
+        return node.mHidden ? 0 : 1;
+    }
+
+    private static boolean isMarker(Node node) {
+        return node.mSerial < 0 && !node.mHidden;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.mSize;
+    }
+
+    private static int markers(Node node) {
+        return node == null ? 0 : node.mMarkers;
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("index: " + index + ", limit: " + limit);
+        }
+    }
+
+
+    private static final class Node {
+        final int mSerial;
+        final int mPriority;
+        int mSize = 1;
+        int mMarkers;
+        boolean mHidden;
+        Node mLeft;
+        Node mRight;
+        Node mParent;
+
+        Node(int serial, int priority) {
+            mSerial = serial;
+            mPriority = priority;
+            mMarkers = serial < 0 ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.neo.androidgesturespluralsight.customviews;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class ImageTransformTest {
+
+    private static final float VIEW_WIDTH = 1080f;
+    private static final float VIEW_HEIGHT = 1920f;
+    private static final float DELTA = 0.01f;
+
+    private final float[] mValues = new float[9];
+
+    @Test
+    public void fitsAndCentresTheImage() {
+        ImageTransform transform = new ImageTransform();
+        transform.setViewSize(VIEW_WIDTH, VIEW_HEIGHT);
+        transform.fitToScreen(2000f, 1000f);
+        transform.getValues(mValues);
+
+        assertEquals(0.54f, mValues[0], DELTA);     // width is the limiting dimension
+        assertEquals(0f, mValues[2], DELTA);
+        assertEquals((VIEW_HEIGHT - 540f) / 2, mValues[5], DELTA);
+        assertEquals(VIEW_WIDTH, transform.getContentWidth(), DELTA);
+        assertEquals(540f, transform.getContentHeight(), DELTA);
+    }
+
+    @Test
+    public void pinchKeepsThePointUnderTheFingersOnceTheImageFillsTheView() {
+        ImageTransform transform = new ImageTransform();
+        transform.setViewSize(VIEW_WIDTH, VIEW_HEIGHT);
+        transform.fitToScreen(1000f, 1000f);
+        transform.scale(4f, 540f, 960f);        // fills the view from here on
+
+        transform.getValues(mValues);
+        float focusX = 700f, focusY = 1100f;
+        float imageX = (focusX - mValues[2]) / mValues[0];
+        float imageY = (focusY - mValues[5]) / mValues[4];
+        transform.scale(0.9f, focusX, focusY);
+        transform.getValues(mValues);
+        assertEquals(focusX, imageX * mValues[0] + mValues[2], DELTA);
+        assertEquals(focusY, imageY * mValues[4] + mValues[5], DELTA);
+
+        // never past the max zoom
+        transform.scale(100f, focusX, focusY);
+        assertEquals(4f, transform.getSaveScale(), DELTA);
+    }
+
+    @Test
+    public void flingBoundsAreWhereTranslationIsClamped() {
+        // zoomed, the image may move until its edges meet the view's
+        assertEquals(-1080f, ImageTransform.getMinTranslation(1080f, 2160f), DELTA);
+        assertEquals(0f, ImageTransform.getMaxTranslation(1080f, 2160f), DELTA);
+        assertEquals(0f, ImageTransform.getFixTranslation(-1080f, 1080f, 2160f), DELTA);
+        assertEquals(10f, ImageTransform.getFixTranslation(-1090f, 1080f, 2160f), DELTA);
+
+        // not zoomed, it stays inside the view
+        assertEquals(0f, ImageTransform.getMinTranslation(1080f, 720f), DELTA);
+        assertEquals(360f, ImageTransform.getMaxTranslation(1080f, 720f), DELTA);
+        assertEquals(-40f, ImageTransform.getFixTranslation(400f, 1080f, 720f), DELTA);
+    }
+
+    @Test
+    public void doubleTapZoomRunsFromStartToEndInsideTheView() {
+        ImageTransform transform = new ImageTransform();
+        transform.setViewSize(VIEW_WIDTH, VIEW_HEIGHT);
+        transform.fitToScreen(1000f, 1000f);
+        ImageTransform start = new ImageTransform();
+        ImageTransform end = new ImageTransform();
+        start.set(transform);
+        end.set(transform);
+        end.zoomTo(2.5f, 300f, 1000f);
+
+        // the tapped point stays under the finger
+        start.getValues(mValues);
+        float imageX = (300f - mValues[2]) / mValues[0];
+        float imageY = (1000f - mValues[5]) / mValues[4];
+        end.getValues(mValues);
+        assertEquals(2.5f, end.getSaveScale(), DELTA);
+        assertEquals(300f, imageX * mValues[0] + mValues[2], DELTA);
+        assertEquals(1000f, imageY * mValues[4] + mValues[5], DELTA);
+
+        transform.interpolate(start, end, 0f);
+        assertEquals(start.getTransX(), transform.getTransX(), DELTA);
+        assertEquals(1f, transform.getSaveScale(), DELTA);
+        for (int frame = 1; frame <= 20; frame++) {
+            transform.interpolate(start, end, frame / 20f);
+            assertInBounds(transform);
+        }
+        assertEquals(end.getTransX(), transform.getTransX(), DELTA);
+        assertEquals(end.getTransY(), transform.getTransY(), DELTA);
+        assertEquals(2.5f, transform.getSaveScale(), DELTA);
+
+        // and back out, the bounds clamp the zoom around an edge
+        end.fitToScreen(1000f, 1000f);
+        start.set(transform);
+        transform.interpolate(start, end, 0.5f);
+        assertInBounds(transform);
+        transform.interpolate(start, end, 1f);
+        assertEquals(1f, transform.getSaveScale(), DELTA);
+        assertEquals((VIEW_HEIGHT - VIEW_WIDTH) / 2, transform.getTransY(), DELTA);
+    }
+
+    /**
+     * replays a pinch and pan the way onTouch drives it, checks the image never leaves its bounds and
+     * that nothing on the path allocates
+     */
+    @Test
+    public void replayedGestureStaysInBoundsAndAllocatesNothing() {
+        ImageTransform transform = new ImageTransform();
+        transform.setViewSize(VIEW_WIDTH, VIEW_HEIGHT);
+        transform.fitToScreen(1200f, 1600f);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        replay(transform, 50000);      // warm up, class loading and compiling the loop may allocate
+        threads.getThreadAllocatedBytes(thread);
+        threads.getThreadAllocatedBytes(thread);
+
+        // the jvm recompiling the loop can allocate once in a while, garbage from the gesture would show every round
+        long allocated = -1;
+        for (int round = 0; round < 3 && allocated != 0; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            replay(transform, 20000);
+            allocated = threads.getThreadAllocatedBytes(thread) - before;
+        }
+        assertEquals("bytes allocated during the gesture", 0, allocated);
+    }
+
+    private void replay(ImageTransform transform, int events) {
+        for (int event = 0; event < events; event++) {
+            int phase = event % 400;
+            if (phase < 100) {
+                transform.scale(1.02f, 300f + phase, 800f - phase);        // pinch out
+            } else if (phase < 300) {
+                transform.drag(phase < 200 ? 23f : -31f, phase < 200 ? -17f : 29f);
+            } else {
+                transform.scale(0.98f, 500f, 900f);                        // pinch in
+            }
+            transform.getValues(mValues);
+            assertInBounds(transform);
+        }
+    }
+
+    private void assertInBounds(ImageTransform transform) {
+        if (transform.getContentWidth() > VIEW_WIDTH) {
+            assertTrue(transform.getTransX() <= DELTA);
+            assertTrue(transform.getTransX() >= VIEW_WIDTH - transform.getContentWidth() - DELTA);
+        }
+        if (transform.getContentHeight() > VIEW_HEIGHT) {
+            assertTrue(transform.getTransY() <= DELTA);
+            assertTrue(transform.getTransY() >= VIEW_HEIGHT - transform.getContentHeight() - DELTA);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.neo.androidgesturespluralsight.models;
+
+import com.neo.androidgesturespluralsight.resources.ProductHeaders;
+import com.neo.androidgesturespluralsight.resources.Products;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ProductCodecTest {
+
+    private static final ProductCodec.Catalog CATALOG = new ProductCodec.Catalog() {
+        @Override
+        public Product builtInBySerial(int serialNumber) {
+            return Products.bySerial(serialNumber);
+        }
+    };
+
+    private static final ProductCodec.Catalog NO_CATALOG = new ProductCodec.Catalog() {
+        @Override
+        public Product builtInBySerial(int serialNumber) {
+            return null;
+        }
+    };
+
+    @Test
+    public void encodedProductKeepsEveryField() {
+        Product product = new Product("Mug (15 oz) \u00e9dition", 12345, "Mug", Money.ofCents(-1499), -3);
+
+        assertSameFields(product, ProductCodec.decode(ProductCodec.encode(product), CATALOG));
+    }
+
+    @Test
+    public void onlyUnchangedCatalogProductsAreReferences() {
+        assertTrue(ProductCodec.isReference(Products.HOODY_NAVY, CATALOG));
+        assertTrue(ProductCodec.isReference(new Product(Products.HOODY_NAVY), CATALOG));
+
+        Product repriced = new Product(Products.HOODY_NAVY);
+        repriced.setPrice(Money.ofCents(1));
+        assertFalse(ProductCodec.isReference(repriced, CATALOG));
+        assertFalse(ProductCodec.isReference(ProductHeaders.newHeader(0), CATALOG));
+
+        // a copy with the catalog's serial number but other fields stays a copy
+        assertSameFields(repriced, ProductCodec.decode(ProductCodec.encode(repriced), CATALOG));
+    }
+
+    @Test
+    public void referencesResolveToTheCatalogInstance() {
+        int serialNumber = Products.HOODY_NAVY.getSerial_number();
+        assertSame(Products.HOODY_NAVY, ProductCodec.resolve(serialNumber, ProductCodec.catalog()));
+
+        // written by a build that had this product, the item is dropped
+        assertNull(ProductCodec.resolve(serialNumber, NO_CATALOG));
+    }
+
+    /**
+     * a restored process can unparcel a product before anything has touched Products, the codec
+     * has to load the catalog itself. runs the codec in a class loader where nothing is loaded yet
+     */
+    @Test
+    public void catalogIsLoadedByTheFirstLookup() throws Exception {
+        ClassLoader fresh = new FreshLoader(getClass().getClassLoader());
+        Class<?> codec = fresh.loadClass(ProductCodec.class.getName());
+        assertNotSame(ProductCodec.class, codec);
+
+        Method catalog = codec.getDeclaredMethod("catalog");
+        catalog.setAccessible(true);
+        Method builtInBySerial = fresh.loadClass(ProductCodec.Catalog.class.getName())
+                .getMethod("builtInBySerial", int.class);
+        Object product = builtInBySerial.invoke(catalog.invoke(null), Products.HOODY_NAVY.getSerial_number());
+
+        assertNotNull(product);
+        assertSame(fresh, product.getClass().getClassLoader());
+        assertEquals(Products.HOODY_NAVY.getTitle(), product.getClass().getMethod("getTitle").invoke(product));
+    }
+
+    @Test
+    public void malformedDataIsRejected() {
+        byte[] data = ProductCodec.encode(Products.HOODY_NAVY);
+        for (byte[] bad : new byte[][]{{}, {(byte) 0x80}, Arrays.copyOf(data, data.length - 1)}) {
+            try {
+                ProductCodec.decode(bad, NO_CATALOG);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void encodingIsSmallerThanParcelStrings() {
+        Product product = Products.CELL_PHONE_CASE_1;
+        // Parcel.writeString: int length + UTF-16 chars + terminator, padded to 4 bytes
+        int legacy = 4 + ((product.getTitle().length() + 1) * 2 + 3 & ~3)
+                + 4 + ((product.getType().length() + 1) * 2 + 3 & ~3) + 4 + 4;
+
+        assertTrue(ProductCodec.encode(product).length < legacy);
+    }
+
+    private static void assertSameFields(Product expected, Product actual) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getImage(), actual.getImage());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getSerial_number(), actual.getSerial_number());
+    }
+
+
+    /**
+     * defines its own copy of the models and resources classes, everything else comes from the parent
+     */
+    private static final class FreshLoader extends ClassLoader {
+
+        FreshLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("com.neo.androidgesturespluralsight.models.")
+                    && !name.startsWith("com.neo.androidgesturespluralsight.resources.")) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> loaded = findLoadedClass(name);
+            if (loaded == null) {
+                byte[] bytes = readClass(name);
+                loaded = defineClass(name, bytes, 0, bytes.length);
+            }
+            if (resolve) {
+                resolveClass(loaded);
+            }
+            return loaded;
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int read; (read = in.read(buffer)) != -1; ) {
+                    out.write(buffer, 0, read);
+                }
+                in.close();
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.neo.androidgesturespluralsight.resources;
+
+import com.neo.androidgesturespluralsight.models.Money;
+import com.neo.androidgesturespluralsight.models.Product;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColumnarCatalogTest {
+
+    private static final Product[] PRODUCTS = {
+            new Product("Navy Hoody", 11, "Hoody", Money.ofCents(3499), 7725277),
+            new Product("Mug (11 oz) \u00e9dition \u2615", 12, "Mug", Money.ofCents(-1), -5),
+            new Product("\u6f22\u5b57 T-Shirt \ud83d\udc55", 13, "T-Shirt", Money.ofCents(Long.MAX_VALUE), 0),
+            new Product("", 14, "Hoody", Money.ofCents(Long.MIN_VALUE), Integer.MAX_VALUE),
+    };
+
+    @Test
+    public void columnsReadBackEveryField() {
+        ColumnarCatalog catalog = ColumnarCatalog.of(new Product[]{PRODUCTS[0], PRODUCTS[1]},
+                new Product[]{PRODUCTS[2], PRODUCTS[3]});
+        assertEquals(PRODUCTS.length, catalog.size());
+        for (int row = 0; row < PRODUCTS.length; row++) {
+            Product product = PRODUCTS[row];
+            assertEquals(product.getTitle(), catalog.getTitle(row));
+            assertEquals(product.getImage(), catalog.getImage(row));
+            assertEquals(product.getType(), catalog.getType(row));
+            assertEquals(product.getPrice().getCents(), catalog.getPriceCents(row));
+            assertEquals(product.getSerial_number(), catalog.getSerial_number(row));
+
+            Product copy = catalog.toProduct(row);
+            assertEquals(product.getTitle(), copy.getTitle());
+            assertEquals(product.getPrice(), copy.getPrice());
+            assertEquals(product.getType(), copy.getType());
+        }
+
+        // type names are stored once
+        assertEquals(catalog.getTypeId(0), catalog.getTypeId(3));
+        assertNotEquals(catalog.getTypeId(0), catalog.getTypeId(1));
+        assertNotEquals(catalog.getTypeId(1), catalog.getTypeId(2));
+    }
+
+    @Test
+    public void copyToStopsAtTheEnd() {
+        ColumnarCatalog catalog = ColumnarCatalog.of(PRODUCTS);
+        Product[] page = new Product[3];
+        assertEquals(3, catalog.copyTo(0, page));
+        assertEquals(1, catalog.copyTo(3, page));
+        assertEquals(Integer.MAX_VALUE, page[0].getSerial_number());
+        assertEquals(0, catalog.copyTo(4, page));
+    }
+
+    @Test
+    public void builderGrowsPastItsInitialCapacity() {
+        ColumnarCatalog.Builder builder = new ColumnarCatalog.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("Product \u00e9 " + i, i, "Type " + (i % 3), i * 100L, i);
+        }
+        ColumnarCatalog catalog = builder.build();
+        assertEquals(1000, catalog.size());
+        assertEquals("Product \u00e9 999", catalog.getTitle(999));
+        assertEquals("Type 0", catalog.getType(999));
+        assertEquals(99900, catalog.getPriceCents(999));
+    }
+}
@@ -0,0 +1,111 @@
+package com.neo.androidgesturespluralsight.resources;
+
+import com.neo.androidgesturespluralsight.models.Money;
+import com.neo.androidgesturespluralsight.models.Product;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProductSearchIndexTest {
+
+    private static final Product NAVY_HOODY = product("Navy Hoody", "Hoody", 1);
+    private static final Product NAVY_T_SHIRT = product("Navy T-Shirt", "T-Shirt", 2);
+    private static final Product GREY_HOODY = product("Grey Hoody", "Hoody", 3);
+    private static final Product MUG = product("Mug (11 oz)", "Mug", 4);
+
+    private final ProductSearchIndex mIndex = ProductSearchIndex.of(
+            new Product[]{NAVY_HOODY, NAVY_T_SHIRT}, new Product[]{GREY_HOODY, MUG});
+
+    @Test
+    public void everyQueryWordHasToPrefixAWord() {
+        assertResults("hoo", NAVY_HOODY, GREY_HOODY);          // catalog order
+        assertResults("NAVY h", NAVY_HOODY);
+        assertResults("navy shirt", NAVY_T_SHIRT);
+        assertResults("shirt, navy!", NAVY_T_SHIRT);          // any order, punctuation splits words
+        assertResults("t", NAVY_T_SHIRT);                     // types are searched too
+        assertResults("11 oz", MUG);
+        assertResults("navy navy", NAVY_HOODY, NAVY_T_SHIRT);
+        assertResults("navyx");
+        assertResults("hoody mug");
+        assertResults("oody");                                // prefixes only, not infixes
+    }
+
+    @Test
+    public void emptyQueryFindsNothing() {
+        assertResults("");
+        assertResults("  -- ()");
+        assertEquals(0, mIndex.search("navy", 0, new ArrayList<Product>()));
+    }
+
+    @Test
+    public void resultsStopAtTheLimitAndRepeatedQueriesAgree() {
+        List<Product> results = new ArrayList<>();
+        assertEquals(1, mIndex.search("hoody", 1, results));
+        assertEquals(NAVY_HOODY, results.get(0));
+
+        for (int i = 0; i < 1000; i++) {
+            assertResults(i % 2 == 0 ? "grey" : "t", i % 2 == 0 ? GREY_HOODY : NAVY_T_SHIRT);
+        }
+    }
+
+    /**
+     * the per keystroke path on a 100k product catalog allocates nothing when the result list has room
+     */
+    @Test
+    public void queriesOnALargeCatalogAllocateNothing() {
+        ProductSearchIndex index = ProductSearchIndex.of(syntheticCatalog(100000));
+        String[] queries = {"n", "na", "navy", "navy h", "navy hoody 4", "t shirt red", "zzz", ""};
+        List<Product> results = new ArrayList<>(100);
+
+        for (int i = 0; i < 2000; i++) {       // warm up
+            results.clear();
+            index.search(queries[i % queries.length], 100, results);
+        }
+        assertEquals(100, index.search("navy", 100, new ArrayList<Product>()));
+        assertEquals("Navy Hoody 49", index.search("navy hoody 49", 1).get(0).getTitle());
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = -1;
+        // the jvm recompiling the loop can allocate once in a while, garbage from a query would show every round
+        for (int round = 0; round < 3 && allocated != 0; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 200; i++) {
+                results.clear();
+                index.search(queries[i % queries.length], 100, results);
+            }
+            allocated = threads.getThreadAllocatedBytes(thread) - before;
+        }
+        assertEquals("bytes allocated by the queries", 0, allocated);
+    }
+
+    private void assertResults(String query, Product... expected) {
+        List<Product> results = new ArrayList<>();
+        assertEquals(expected.length, mIndex.search(query, 10, results));
+        assertArrayEquals(query, expected, results.toArray());
+    }
+
+    private static Product product(String title, String type, int serialNumber) {
+        return new Product(title, 0, type, Money.ofCents(100), serialNumber);
+    }
+
+    /**
+     * "Navy Hoody 0", "Navy T-Shirt 1", ... "Grey Hoody 7", colours and types cycle so every prefix has many matches
+     */
+    static Product[] syntheticCatalog(int size) {
+        String[] colours = {"Navy", "Grey", "Black", "White", "Red", "Teal", "Camo"};
+        String[] types = {"Hoody", "T-Shirt", "Mug", "Tank", "Snapback", "Trucker Hat", "Phone Case"};
+        Product[] products = new Product[size];
+        for (int i = 0; i < size; i++) {
+            String type = types[i % types.length];
+            products[i] = new Product(colours[(i / types.length) % colours.length] + " " + type + " " + i,
+                    0, type, Money.ofCents(1000 + i % 5000), i);
+        }
+        return products;
+    }
+}
@@ -0,0 +1,114 @@
+package com.neo.androidgesturespluralsight.util;
+
+import com.neo.androidgesturespluralsight.models.Money;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * checks the hand written price formatter against DecimalFormat and that cached prices format
+ * without allocating
+ */
+public class BigDecimalUtilTest {
+
+    private static final long[] AMOUNTS = {0, 1, 9, 10, 99, 100, 1099, 3499, 100000, 123456, 99999999,
+            100000000, 123456789012L, -1, -99, -1099, -123456789, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    @Test
+    public void formatMatchesDecimalFormat() {
+        DecimalFormat df = new DecimalFormat("###,###,###.00");
+        char[] buffer = new char[BigDecimalUtil.MAX_LENGTH + 3];
+        for (long cents : AMOUNTS) {
+            String expected = df.format(BigDecimal.valueOf(cents, 2));
+            assertEquals(expected, BigDecimalUtil.getValue(Money.ofCents(cents)));
+
+            int length = BigDecimalUtil.format(cents, buffer, 3);
+            assertEquals(expected, new String(buffer, 3, length));
+        }
+    }
+
+    @Test
+    public void formatMatchesDecimalFormatInOtherLocales() {
+        // grouping with dots and spaces, arabic digits and a bidi mark before the minus sign
+        Locale[] locales = {Locale.GERMANY, Locale.FRANCE, new Locale("de", "CH"), new Locale("ar", "EG"),
+                new Locale("fa", "IR"), new Locale("hi", "IN")};
+        char[] buffer = new char[BigDecimalUtil.MAX_LENGTH];
+        for (Locale locale : locales) {
+            DecimalFormat df = new DecimalFormat("###,###,###.00", DecimalFormatSymbols.getInstance(locale));
+            for (long cents : AMOUNTS) {
+                BigDecimal amount = BigDecimal.valueOf(cents, 2);
+                String expected = df.format(amount);
+                assertEquals(locale + " " + cents, expected, BigDecimalUtil.getValue(Money.ofCents(cents), locale));
+                assertEquals(expected, new String(buffer, 0, BigDecimalUtil.format(cents, locale, buffer, 0)));
+                assertEquals(expected, BigDecimalUtil.getValue(amount, locale));
+            }
+        }
+    }
+
+    @Test
+    public void defaultLocaleChangeIsPickedUp() {
+        Locale original = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.US);
+            assertEquals("1,234.50", BigDecimalUtil.getValue(Money.ofCents(123450)));
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals("1.234,50", BigDecimalUtil.getValue(Money.ofCents(123450)));
+            assertEquals("-1.234,50", BigDecimalUtil.getValue(new BigDecimal("-1234.50")));
+            Locale.setDefault(Locale.US);
+            assertEquals("1,234.50", BigDecimalUtil.getValue(Money.ofCents(123450)));
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    public void cachedPriceIsReused() {
+        Money price = Money.ofCents(2399);
+        assertSame(BigDecimalUtil.getValue(price), BigDecimalUtil.getValue(Money.ofCents(2399)));
+    }
+
+    /**
+     * micro benchmark of the warm bind path: formatting catalog prices that are already cached
+     * must not allocate at all
+     */
+    @Test
+    public void warmPathDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        Money[] prices = {Money.ofCents(1099), Money.ofCents(3499), Money.ofCents(2399), Money.ofCents(2099),
+                Money.ofCents(1999), Money.ofCents(2599), Money.ofCents(1399), Money.ofCents(2899)};
+        char[] buffer = new char[BigDecimalUtil.MAX_LENGTH];
+        long threadId = Thread.currentThread().getId();
+
+        // warm up the cache and let the JIT compile the path
+        int sink = 0;
+        for (int i = 0; i < 50000; i++) {
+            sink += BigDecimalUtil.getValue(prices[i & 7]).length();
+            sink += BigDecimalUtil.format(prices[i & 7].getCents(), buffer, 0);
+        }
+
+        int iterations = 100000;
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            sink += BigDecimalUtil.getValue(prices[i & 7]).length();
+            sink += BigDecimalUtil.format(prices[i & 7].getCents(), buffer, 0);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(sink > 0);
+        // reading the counter can cost a few bytes, any allocation per price would cost at least 16 bytes each
+        assertEquals("bytes allocated per formatted price (" + allocated + " in total)", 0, allocated / iterations);
+    }
+}
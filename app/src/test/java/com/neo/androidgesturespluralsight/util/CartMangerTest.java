@@ -0,0 +1,334 @@
+package com.neo.androidgesturespluralsight.util;
+
+import com.neo.androidgesturespluralsight.models.Money;
+import com.neo.androidgesturespluralsight.models.Product;
+import com.neo.androidgesturespluralsight.resources.ProductHeaders;
+import com.neo.androidgesturespluralsight.resources.Products;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CartMangerTest {
+
+    private File mDir;
+    private CartStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("cart-manger", "");
+        mDir.delete();
+        mStore = CartStore.open(mDir);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void runningTotalsMatchARescan() throws IOException {
+        CartManger cart = new CartManger(mStore);
+        Product[] products = {Products.HOODY_NAVY, Products.MUG_11OZ, Products.T_SHIRT_WHITE, Products.TANK_BLACK,
+                Products.SNAPBACK_CAMO, Products.CELL_PHONE_CASE_2, Products.HALF_SLEEVE_RED};
+        Random random = new Random(7);
+
+        for (int step = 0; step < 2000; step++) {
+            Product product = products[random.nextInt(products.length)];
+            int size = cart.getCartList().size();
+            switch (random.nextInt(3)) {
+                case 0:
+                    cart.addItemToCart(product);
+                    break;
+                case 1:
+                    cart.removeItemFromCart(product);
+                    break;
+                default:
+                    cart.moveItem(product, 1 + random.nextInt(size - 1));
+                    break;
+            }
+            assertTotals(cart);
+        }
+
+        // and they are rebuilt the same after a restart
+        mStore.close();
+        mStore = CartStore.open(mDir);
+        assertTotals(new CartManger(mStore));
+    }
+
+    /**
+     * a list built from the change events alone must stay equal to the cart. off a device the main
+     * looper check passes for every thread, so events arrive before each change returns
+     */
+    @Test
+    public void changeEventsKeepAListInSync() {
+        CartManger cart = new CartManger(mStore);
+        final ArrayList<Product> list = new ArrayList<>();
+        final int[] sectionCounts = new int[ProductHeaders.HEADER_TITLES.length];
+        final boolean[] inBatch = new boolean[1];
+        final int[] batches = new int[1];
+        CartManger.OnCartChangedListener listener = new CartManger.OnCartChangedListener() {
+            @Override
+            public void onItemAdded(Product product, int position, int section) {
+                list.add(position, product);
+                sectionCounts[section]++;
+            }
+
+            @Override
+            public void onItemRemoved(Product product, int position, int section) {
+                assertEquals(product.getSerial_number(), list.remove(position).getSerial_number());
+                sectionCounts[section]--;
+            }
+
+            @Override
+            public void onItemMoved(Product product, int fromPosition, int toPosition, int fromSection, int toSection) {
+                assertEquals(product.getSerial_number(), list.remove(fromPosition).getSerial_number());
+                list.add(toPosition, product);
+                sectionCounts[fromSection]--;
+                sectionCounts[toSection]++;
+            }
+
+            @Override
+            public void onBatchStarted() {
+                assertFalse(inBatch[0]);
+                inBatch[0] = true;
+            }
+
+            @Override
+            public void onBatchFinished() {
+                assertTrue(inBatch[0]);
+                inBatch[0] = false;
+                batches[0]++;
+            }
+        };
+        list.addAll(cart.addOnCartChangedListener(listener));
+        Product[] products = {Products.HOODY_NAVY, Products.MUG_11OZ, Products.T_SHIRT_WHITE, Products.TANK_BLACK,
+                Products.SNAPBACK_CAMO, Products.TANK_GREY, Products.SNAPBACK_RED, Products.TRUCKER_HAT_NAVY};
+        Random random = new Random(11);
+
+        for (int step = 0; step < 1000; step++) {
+            Product product = products[random.nextInt(products.length)];
+            switch (random.nextInt(7)) {
+                case 0:
+                    cart.addItemToCart(product);
+                    break;
+                case 1:
+                    cart.removeItemFromCart(product);
+                    break;
+                case 2:
+                    cart.addAll(randomSubset(products, random));
+                    break;
+                case 3:
+                    cart.removeAll(randomSubset(products, random));
+                    break;
+                case 4:
+                    cart.clearSection(random.nextInt(sectionCounts.length));
+                    break;
+                case 5:
+                    cart.moveRange(1 + random.nextInt(list.size() - 1), 1 + random.nextInt(3),
+                            1 + random.nextInt(list.size() - 1));
+                    break;
+                default:
+                    cart.moveItem(product, 1 + random.nextInt(list.size() - 1));
+                    break;
+            }
+            assertArrayEquals(serialsOf(cart.getCartList()), serialsOf(list));
+            for (int section = 0; section < sectionCounts.length; section++) {
+                assertEquals(cart.getItemCount(section), sectionCounts[section]);
+            }
+        }
+
+        assertTrue(batches[0] > 100);
+
+        cart.removeOnCartChangedListener(listener);
+        cart.addItemToCart(Products.MUG_15OZ);
+        cart.removeItemFromCart(Products.MUG_15OZ);
+        assertArrayEquals(serialsOf(cart.getCartList()), serialsOf(list));
+    }
+
+    /**
+     * writers on disjoint products race each other, the writer thread and lock free readers. readers
+     * must only ever see consistent snapshots, and the end state must be what each writer did last,
+     * both in memory and after replaying the log
+     */
+    @Test
+    public void concurrentWritersAndReaders() throws Exception {
+        final CartManger cart = new CartManger(mStore);
+        final Product[][] groups = {Products.HOODIES, Products.T_SHIRTS, Products.SNAPBACKS, Products.TANKS,
+                Products.HALF_SLEEVES, Products.TRUCKER_HATS};
+        final boolean[][] expected = new boolean[groups.length][];
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ArrayList<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < groups.length; w++) {
+            final int writer = w;
+            expected[w] = new boolean[groups[w].length];
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(writer);
+                    try {
+                        start.await();
+                        for (int step = 0; step < 20000; step++) {
+                            int i = random.nextInt(groups[writer].length);
+                            Product product = groups[writer][i];
+                            switch (random.nextInt(3)) {
+                                case 0:
+                                    cart.addItemToCart(product);
+                                    expected[writer][i] = true;
+                                    break;
+                                case 1:
+                                    cart.removeItemFromCart(product);
+                                    expected[writer][i] = false;
+                                    break;
+                                default:
+                                    // positions shift under other writers, any position past the first header is valid
+                                    cart.moveItem(product, 1 + random.nextInt(3));
+                                    break;
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        ArrayList<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (writing.get()) {
+                            assertConsistent(cart.getSnapshot());
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        writing.set(false);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        assertContents(cart, groups, expected);
+        assertTotals(cart);
+
+        mStore.close();
+        mStore = CartStore.open(mDir);
+        CartManger reopened = new CartManger(mStore);
+        assertContents(reopened, groups, expected);
+        assertArrayEquals(serialsOf(cart.getCartList()), serialsOf(reopened.getCartList()));
+    }
+
+    private static List<Product> randomSubset(Product[] products, Random random) {
+        ArrayList<Product> subset = new ArrayList<>();
+        for (Product product : products) {
+            if (random.nextBoolean()) {
+                subset.add(product);
+            }
+        }
+        return subset;
+    }
+
+    private static int[] serialsOf(List<Product> products) {
+        int[] serials = new int[products.size()];
+        for (int i = 0; i < serials.length; i++) {
+            serials[i] = products.get(i).getSerial_number();
+        }
+        return serials;
+    }
+
+    private static void assertContents(CartManger cart, Product[][] groups, boolean[][] expected) {
+        HashSet<Integer> inCart = new HashSet<>();
+        for (Product product : cart.getCartItems()) {
+            assertTrue(inCart.add(product.getSerial_number()));
+        }
+        for (int w = 0; w < groups.length; w++) {
+            for (int i = 0; i < groups[w].length; i++) {
+                assertEquals(expected[w][i], inCart.contains(groups[w][i].getSerial_number()));
+            }
+        }
+    }
+
+    private static void assertConsistent(CartManger.Snapshot snapshot) {
+        List<Product> list = snapshot.getList();
+        CartTotals totals = snapshot.getTotals();
+        long total = 0;
+        int section = -1;
+        for (Product product : list) {
+            if (product.getSerial_number() < 0) {
+                assertEquals(section + 1, ProductHeaders.sectionOf(product));
+                section++;
+            } else {
+                total += product.getPrice().getCents();
+            }
+        }
+        assertEquals(ProductHeaders.HEADER_TITLES.length - 1, section);
+        assertEquals(Money.ofCents(total), totals.getTotal());
+        assertEquals(snapshot.getItems().size(), totals.getItemCount());
+    }
+
+    private static void assertTotals(CartManger cart) {
+        List<Product> list = cart.getCartList();
+        long[] subtotals = new long[ProductHeaders.HEADER_TITLES.length];
+        int[] counts = new int[subtotals.length];
+        int section = -1;
+        long total = 0;
+        for (Product product : list) {
+            if (product.getSerial_number() < 0) {
+                section = ProductHeaders.sectionOf(product);
+            } else {
+                subtotals[section] += product.getPrice().getCents();
+                counts[section]++;
+                total += product.getPrice().getCents();
+            }
+        }
+
+        assertEquals(Money.ofCents(total), cart.getTotal());
+        for (int i = 0; i < subtotals.length; i++) {
+            assertEquals(Money.ofCents(subtotals[i]), cart.getSubtotal(i));
+            assertEquals(counts[i], cart.getItemCount(i));
+            assertEquals(i, ProductHeaders.sectionOf(list.get(cart.getHeaderPosition(i))));
+        }
+    }
+}
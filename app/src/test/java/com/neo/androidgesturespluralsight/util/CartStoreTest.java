@@ -0,0 +1,421 @@
+package com.neo.androidgesturespluralsight.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CartStoreTest {
+
+    private File mDir;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("cart-store", "");
+        mDir.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void changesSurviveReopen() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.add(3);
+        store.add(1);
+        store.add(2);
+        store.remove(1);
+        assertFalse(store.add(3));
+        store.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{3, 2}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void openAsyncReadsOnTheWriterThread() throws Exception {
+        CartStore store = CartStore.open(mDir);
+        store.addAll(new int[]{1, 2});
+        store.close();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CartStore[] opened = new CartStore[1];
+        final String[] thread = new String[1];
+        CartStore.openAsync(mDir, new CartStore.OnOpenListener() {
+            @Override
+            public void onOpened(CartStore store, IOException error) {
+                opened[0] = store;
+                thread[0] = Thread.currentThread().getName();
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("cart-writer", thread[0]);
+        assertArrayEquals(new int[]{1, 2}, opened[0].serialNumbers());
+        opened[0].close();
+    }
+
+    @Test
+    public void tornRecordIsDroppedOnRecovery() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.add(1);
+        store.add(2);
+        store.close();
+
+        // crash half way through writing the second record
+        File log = new File(mDir, CartStore.LOG_FILE);
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.setLength(file.length() - 4);
+        file.close();
+
+        CartStore recovered = CartStore.open(mDir);
+        assertArrayEquals(new int[]{1}, recovered.serialNumbers());
+        recovered.add(5);
+        recovered.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{1, 5}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void corruptRecordEndsReplay() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.add(1);
+        store.add(2);
+        store.add(3);
+        store.close();
+
+        File log = new File(mDir, CartStore.LOG_FILE);
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.seek(file.length() - 9 * 2 + 2);     // serial of the second record
+        file.write(0x7F);
+        file.close();
+
+        CartStore recovered = CartStore.open(mDir);
+        assertArrayEquals(new int[]{1}, recovered.serialNumbers());
+        recovered.close();
+    }
+
+    @Test
+    public void compactionKeepsContentsAndEmptiesLog() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        for (int i = 0; i < 1000; i++) {
+            store.add(i);
+            store.remove(i);
+        }
+        store.add(42);
+        store.add(7);
+        store.close();
+
+        assertTrue(new File(mDir, CartStore.SNAPSHOT_FILE).exists());
+        assertTrue(new File(mDir, CartStore.LOG_FILE).length() < 9 * 256 + 8);
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{42, 7}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void logFromBeforeTheSnapshotIsIgnored() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.add(1);
+        store.add(2);
+        store.close();
+        File log = new File(mDir, CartStore.LOG_FILE);
+        byte[] oldLog = Files.readAllBytes(log.toPath());
+
+        store = CartStore.open(mDir);
+        store.remove(2);
+        store.compact();
+        store.close();
+
+        // crash after the snapshot was swapped in but before the log was reset
+        Files.write(log.toPath(), oldLog);
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{1}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void burstOfChangesIsGroupCommitted() throws Exception {
+        CartStore store = CartStore.open(mDir, 50);
+        for (int i = 0; i < 50; i++) {
+            store.add(i);
+        }
+        store.flush();
+        int commits = store.getCommitCount();
+
+        // 50 swipes in quick succession
+        for (int i = 0; i < 50; i++) {
+            store.remove(i);
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final IOException[] error = new IOException[1];
+        store.whenCommitted(new CartStore.OnCommitListener() {
+            @Override
+            public void onCommit(IOException e) {
+                error[0] = e;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        assertTrue(store.getCommitCount() - commits <= 2);
+
+        // durable without a flush or close
+        CartStore reader = CartStore.open(mDir);
+        assertEquals(0, reader.size());
+        reader.close();
+        store.close();
+    }
+
+    @Test
+    public void asyncFlushWritesWithoutWaitingForTheWindow() throws Exception {
+        CartStore store = CartStore.open(mDir, TimeUnit.HOURS.toMillis(1));
+        store.addAll(new int[]{10, 11, 12});
+        store.removeUndoably(11);
+        store.syncAsync();
+        awaitCommit(store);
+        assertEquals(1, store.undoRemove(11));
+
+        store.removeUndoably(12);
+        store.flushAsync();
+        assertEquals("the undo window ended with the call", -1, store.undoRemove(12));
+        awaitCommit(store);
+
+        CartStore reader = CartStore.open(mDir);
+        assertArrayEquals(new int[]{10, 11}, reader.serialNumbers());
+        reader.close();
+        store.close();
+    }
+
+    @Test
+    public void orderAndSectionsSurviveReopen() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.add(-1);
+        store.add(-2);
+        store.add(10);
+        store.add(11);
+        store.add(12);
+        store.move(12, 1);      // into the first section
+        store.insert(0, 9);
+        store.move(9, 2);
+        store.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{-1, 12, 9, -2, 10, 11}, reopened.serialNumbers());
+        assertEquals(0, reopened.sectionAt(reopened.indexOf(9)));
+        assertEquals(1, reopened.sectionAt(reopened.indexOf(11)));
+        reopened.compact();
+        reopened.close();
+
+        reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{-1, 12, 9, -2, 10, 11}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void moveOnlyLogsTheMovedEntry() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        for (int i = 0; i < 100; i++) {
+            store.add(i);
+        }
+        store.flush();
+        long before = new File(mDir, CartStore.LOG_FILE).length();
+
+        store.move(50, 3);
+        store.flush();
+
+        assertEquals(13, new File(mDir, CartStore.LOG_FILE).length() - before);
+        store.close();
+    }
+
+    @Test
+    public void bulkRemoveIsOneWrite() throws IOException {
+        CartStore store = CartStore.open(mDir, TimeUnit.HOURS.toMillis(1));
+        int[] serials = new int[500];
+        for (int i = 0; i < serials.length; i++) {
+            serials[i] = i;
+        }
+        store.addAll(serials);
+        store.flush();
+        int commits = store.getCommitCount();
+
+        int[] positions = store.removeAll(serials);
+        store.flush();
+
+        assertEquals(1, store.getCommitCount() - commits);
+        for (int position : positions) {
+            assertEquals(0, position);
+        }
+        store.close();
+        CartStore reopened = CartStore.open(mDir);
+        assertEquals(0, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void tornBatchIsDroppedWhole() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.add(1);
+        store.add(2);
+        store.flush();
+        store.removeAll(new int[]{1, 2});
+        store.addAll(new int[]{3, 4, 5});
+        store.close();
+
+        // crash half way through writing the addAll batch
+        File log = new File(mDir, CartStore.LOG_FILE);
+        RandomAccessFile file = new RandomAccessFile(log, "rw");
+        file.setLength(file.length() - 4);
+        file.close();
+
+        CartStore recovered = CartStore.open(mDir);
+        assertArrayEquals(new int[0], recovered.serialNumbers());
+        recovered.add(6);
+        recovered.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{6}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void moveRangeKeepsTheOrderOfTheRange() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.addAll(new int[]{0, 1, 2, 3, 4, 5, 6, 7});
+        store.moveRange(1, 3, 4);
+        assertArrayEquals(new int[]{0, 4, 5, 6, 1, 2, 3, 7}, store.serialNumbers());
+        store.moveRange(4, 3, 0);
+        assertArrayEquals(new int[]{1, 2, 3, 0, 4, 5, 6, 7}, store.serialNumbers());
+        store.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{1, 2, 3, 0, 4, 5, 6, 7}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void undoIsInMemoryAndExpiredRemovesAreLogged() throws IOException {
+        CartStore store = CartStore.open(mDir, TimeUnit.HOURS.toMillis(1));
+        store.addAll(new int[]{-1, 10, 11, 12, 13});
+        store.flush();
+        long logLength = new File(mDir, CartStore.LOG_FILE).length();
+
+        assertEquals(2, store.removeUndoably(11));
+        assertEquals(2, store.removeUndoably(12));
+        store.add(14);
+        store.remove(10);
+        assertArrayEquals(new int[]{-1, 13, 14}, store.serialNumbers());
+
+        // back between its old neighbours, although 10 is gone and 14 came since
+        assertEquals(1, store.undoRemove(11));
+        assertArrayEquals(new int[]{-1, 11, 13, 14}, store.serialNumbers());
+        assertEquals(-1, store.undoRemove(11));
+        // the undo wrote nothing, only the add and the remove are queued
+        assertEquals(logLength, new File(mDir, CartStore.LOG_FILE).length());
+
+        store.flush();      // ends the undo window for 12
+        assertEquals(-1, store.undoRemove(12));
+        store.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{-1, 11, 13, 14}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void syncLeavesJournaledRemovesUndoable() throws IOException {
+        CartStore store = CartStore.open(mDir, TimeUnit.HOURS.toMillis(1));
+        store.addAll(new int[]{10, 11, 12});
+        store.removeUndoably(11);
+        store.add(13);
+        store.sync();
+        assertEquals(1, store.undoRemove(11));
+
+        store.removeUndoably(12);
+        store.sync();
+
+        // what a process killed now would come back to: the add is on disk, the remove still waits
+        // for its undo window (close would end it)
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{10, 11, 12, 13}, reopened.serialNumbers());
+        reopened.close();
+        assertEquals(2, store.undoRemove(12));
+        store.close();
+    }
+
+    @Test
+    public void positionalChangesLogJournaledRemovesFirst() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.addAll(new int[]{1, 2, 3, 4});
+        store.removeUndoably(2);
+        store.move(4, 1);
+        assertEquals(-1, store.undoRemove(2));
+        for (int i = 0; i < CartStore.JOURNAL_CAPACITY + 1; i++) {
+            store.add(100 + i);
+            store.removeUndoably(100 + i);
+        }
+        assertEquals(-1, store.undoRemove(100));     // pushed out of the full journal
+        assertEquals(3, store.undoRemove(101));
+        store.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{1, 4, 3, 101}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    @Test
+    public void bulkChangesAfterJournaledRemovesSurviveReopen() throws IOException {
+        CartStore store = CartStore.open(mDir);
+        store.add(-1);
+        store.addAll(new int[]{1, 2, 3, 4, 5, 6});
+        store.flush();
+        store.removeUndoably(2);
+        store.removeUndoably(3);
+        store.moveRange(1, 2, 3);
+        store.add(100);
+        store.removeUndoably(100);
+        store.removeUndoably(4);
+        assertEquals(2, store.addAll(new int[]{100, 101}));     // one of them hidden
+        assertArrayEquals(new int[]{-1, 5, 6, 1, 100, 101}, store.serialNumbers());
+        store.close();
+
+        CartStore reopened = CartStore.open(mDir);
+        assertArrayEquals(new int[]{-1, 5, 6, 1, 100, 101}, reopened.serialNumbers());
+        reopened.close();
+    }
+
+    private static void awaitCommit(CartStore store) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final IOException[] error = new IOException[1];
+        store.whenCommitted(new CartStore.OnCommitListener() {
+            @Override
+            public void onCommit(IOException e) {
+                error[0] = e;
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNull(error[0]);
+    }
+}
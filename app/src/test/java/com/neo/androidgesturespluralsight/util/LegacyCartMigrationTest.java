@@ -0,0 +1,188 @@
+package com.neo.androidgesturespluralsight.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LegacyCartMigrationTest {
+
+    private static final int ENTRIES = 100000;
+    private static final long TIME_BUDGET_MS = 20000;
+    private static final long ALLOCATION_BUDGET_BYTES = 1024 * 1024;     // the file itself is ~3 MB
+
+    private File mDir;
+    private File mLegacyFile;
+    private File mCheckpointFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("legacy-cart", "");
+        mDir.delete();
+        mDir.mkdirs();
+        mLegacyFile = new File(mDir, "shopping_cart.xml");
+        mCheckpointFile = new File(mDir, "migration.checkpoint");
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void readerFindsOnlyTheIntsOfTheSet() throws IOException {
+        String xml = "<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n"
+                + "<map>\n"
+                + "    <set name=\"recent\">\n        <string>99</string>\n    </set>\n"
+                + "    <string name=\"cart_items_label\">7</string>\n"
+                + "    <set name=\"cart_items\">\n"
+                + "        <string>12</string>\n"
+                + "        <string>not a number</string>\n"
+                + "        <string> -4 </string>\n"
+                + "        <string>99999999999</string>\n"
+                + "        <string />\n"
+                + "        <string>2147483647</string>\n"
+                + "    </set>\n"
+                + "    <int name=\"version\" value=\"3\" />\n"
+                + "</map>\n";
+        LegacyCartReader reader = new LegacyCartReader(new StringReader(xml), "cart_items");
+        int[] values = new int[8];
+        int count = 0;
+        while (reader.next()) {
+            values[count++] = reader.value();
+        }
+        reader.close();
+        assertArrayEquals(new int[]{12, -4, Integer.MAX_VALUE}, Arrays.copyOf(values, count));
+
+        LegacyCartReader empty = new LegacyCartReader(new StringReader(
+                "<map>\n    <set name=\"cart_items\" />\n</map>\n"), "cart_items");
+        assertFalse(empty.next());
+        empty.close();
+    }
+
+    @Test
+    public void migratesABigCartWithinTimeAndMemoryBudget() throws IOException {
+        writeLegacyCart(ENTRIES);
+        LegacyCartMigration migration = new LegacyCartMigration(mLegacyFile, mCheckpointFile, CartManger.CART_ITEMS);
+
+        // the parse and the checkpoints on their own, the cart store's memory is the cart's not the migration's
+        final long[] sum = new long[1];
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        int moved = migration.run(new LegacyCartMigration.Target() {
+            @Override
+            public void addAll(int[] serialNumbers, int count) {
+                for (int i = 0; i < count; i++) {
+                    sum[0] += serialNumbers[i];
+                }
+            }
+        });
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+
+        assertEquals(ENTRIES, moved);
+        assertEquals((long) ENTRIES * (ENTRIES - 1) / 2, sum[0]);
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < TIME_BUDGET_MS);
+        assertTrue("allocated " + allocated + " bytes", allocated < ALLOCATION_BUDGET_BYTES);
+        assertFalse(mLegacyFile.exists());
+        assertFalse(mCheckpointFile.exists());
+        assertFalse(migration.isNeeded());
+
+        // into a real store
+        writeLegacyCart(ENTRIES);
+        final CartStore store = CartStore.open(new File(mDir, "cart"));
+        start = System.nanoTime();
+        migration.run(storeTarget(store));
+        elapsedMs = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + elapsedMs + " ms", elapsedMs < TIME_BUDGET_MS);
+        store.close();
+
+        CartStore reopened = CartStore.open(new File(mDir, "cart"));
+        assertEquals(ENTRIES, reopened.size());
+        for (int i = 0; i < ENTRIES; i += 997) {
+            assertEquals(i, reopened.serialAt(i));
+        }
+        assertEquals(0, migration.run(storeTarget(reopened)));      // done, nothing left to do
+        reopened.close();
+    }
+
+    @Test
+    public void resumesAfterAFailureWithoutAddingTwice() throws IOException {
+        writeLegacyCart(ENTRIES);
+        LegacyCartMigration migration = new LegacyCartMigration(mLegacyFile, mCheckpointFile, CartManger.CART_ITEMS);
+        final CartStore store = CartStore.open(new File(mDir, "cart"));
+        final int[] chunks = new int[1];
+        try {
+            migration.run(new LegacyCartMigration.Target() {
+                @Override
+                public void addAll(int[] serialNumbers, int count) throws IOException {
+                    if (chunks[0]++ == 3) {
+                        throw new IOException("killed");
+                    }
+                    storeTarget(store).addAll(serialNumbers, count);
+                }
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(3 * LegacyCartMigration.CHUNK_SIZE, store.size());
+        assertTrue(migration.isNeeded());
+
+        // removed by the user before the next launch, must stay removed
+        store.remove(5);
+        assertEquals(ENTRIES - 3 * LegacyCartMigration.CHUNK_SIZE, migration.run(storeTarget(store)));
+        assertEquals(ENTRIES - 1, store.size());
+        assertFalse(store.contains(5));
+        assertEquals(6, store.serialAt(5));
+        assertEquals(ENTRIES - 1, store.serialAt(ENTRIES - 2));
+        store.close();
+    }
+
+    private static LegacyCartMigration.Target storeTarget(final CartStore store) {
+        return new LegacyCartMigration.Target() {
+            @Override
+            public void addAll(int[] serialNumbers, int count) throws IOException {
+                store.addAll(Arrays.copyOf(serialNumbers, count));
+                store.sync();
+            }
+        };
+    }
+
+    /**
+     * what SharedPreferences writes for a string set of serials 0 to entries - 1
+     */
+    private void writeLegacyCart(int entries) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(mLegacyFile), "UTF-8");
+        try {
+            out.write("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+            out.write("    <set name=\"" + CartManger.CART_ITEMS + "\">\n");
+            for (int i = 0; i < entries; i++) {
+                out.write("        <string>" + i + "</string>\n");
+            }
+            out.write("    </set>\n</map>\n");
+        } finally {
+            out.close();
+        }
+    }
+}
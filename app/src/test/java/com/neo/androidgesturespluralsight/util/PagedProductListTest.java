@@ -0,0 +1,259 @@
+package com.neo.androidgesturespluralsight.util;
+
+import android.os.Handler;
+
+import com.neo.androidgesturespluralsight.models.Money;
+import com.neo.androidgesturespluralsight.models.Product;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class PagedProductListTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private final FakeLoader mLoader = new FakeLoader(1005);
+    private final QueueExecutor mBackground = new QueueExecutor();
+    private final QueueHandler mMain = new QueueHandler();
+    private final List<String> mLoaded = new ArrayList<>();
+
+    // 2 pages of prefetch, so at least 3 pages are kept either side of the viewport
+    private final PagedProductList mList = newList(PAGE_SIZE, 2 * PAGE_SIZE, 1);
+
+    @Test
+    public void unloadedPositionsLoadTheirPageOnce() {
+        assertEquals(1005, mList.size());
+        assertNull(mList.get(15));
+        assertNull(mList.get(19));
+        deliver();
+
+        assertEquals("[10]", mLoader.mRequested.toString());
+        assertEquals("[10+10]", mLoaded.toString());
+        assertEquals(15, mList.get(15).getSerial_number());
+        assertEquals(1, mList.getLoadedPageCount());
+    }
+
+    @Test
+    public void serialNumbersAreKnownBeforeThePageLoads() {
+        assertEquals(15, mList.getSerialNumber(15));
+        assertEquals("[]", mLoader.mRequested.toString());
+
+        assertNull(mList.get(15));
+        deliver();
+        assertEquals(mList.get(15).getSerial_number(), mList.getSerialNumber(15));
+        try {
+            mList.getSerialNumber(1005);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void viewportLoadsThePrefetchDistanceAhead() {
+        mList.onViewportChanged(0, 9);
+        deliver();
+        assertEquals("[0, 10, 20]", mLoader.mRequested.toString());
+
+        // the last page is short
+        mList.onViewportChanged(990, 1004);
+        deliver();
+        assertEquals("[0, 10, 20, 990, 1000]", mLoader.mRequested.toString());
+        assertEquals("1000+5", mLoaded.get(mLoaded.size() - 1));
+        assertEquals(1004, mList.get(1004).getSerial_number());
+    }
+
+    @Test
+    public void pagesFarFromTheViewportAreDropped() {
+        mList.onViewportChanged(0, 9);
+        deliver();
+        assertEquals(3, mList.getLoadedPageCount());
+
+        // pages 10 to 12 are loaded, 7 to 15 are kept, so 0 to 2 go
+        mList.onViewportChanged(100, 109);
+        deliver();
+        assertEquals(3, mList.getLoadedPageCount());
+        mList.onViewportChanged(70, 79);
+        deliver();
+        assertEquals("pages 7 to 12", 6, mList.getLoadedPageCount());
+        assertNotNull(mList.get(129));
+
+        mLoader.mRequested.clear();
+        assertNull(mList.get(0));
+        deliver();
+        assertEquals("[0]", mLoader.mRequested.toString());
+    }
+
+    @Test
+    public void failedPageIsRetriedAndRebound() {
+        mLoader.mFailures = 2;
+        mList.onViewportChanged(0, 0);
+        deliver();
+        assertEquals("page 0 and 1 failed", 1, mList.getLoadedPageCount());
+        assertEquals("[20+10]", mLoaded.toString());
+        assertEquals("[1000, 1000]", mMain.mDelays.toString());
+
+        // bound placeholders are not asked for again, only the retry reloads them
+        mMain.runDelayed();
+        deliver();
+        assertEquals("[20+10, 0+10, 10+10]", mLoaded.toString());
+        assertEquals(3, mList.getLoadedPageCount());
+    }
+
+    @Test
+    public void retriesBackOffAndStopWhenThePageIsFarAway() {
+        mLoader.mFailures = 2;
+        mList.onViewportChanged(0, 9);      // pages 0, 1 and 2, the first two fail
+        deliver();
+        mLoader.mFailures = 1;
+        mLoader.mRequested.clear();
+        mMain.mDelays.clear();
+        mMain.runDelayed();                 // page 0 fails again, page 1 loads
+        deliver();
+        assertEquals("[0, 10]", mLoader.mRequested.toString());
+        assertEquals("[2000]", mMain.mDelays.toString());
+
+        mList.onViewportChanged(500, 509);
+        deliver();
+        mLoader.mRequested.clear();
+        mMain.runDelayed();
+        deliver();
+        assertEquals("page 0 is out of the keep window", "[]", mLoader.mRequested.toString());
+
+        // and loads normally when the user scrolls back
+        mList.onViewportChanged(0, 0);
+        deliver();
+        assertNotNull(mList.get(0));
+    }
+
+    @Test
+    public void releasedListDropsPagesInFlight() {
+        assertNull(mList.get(0));
+        mList.release();
+        deliver();
+        assertEquals("[]", mLoaded.toString());
+        assertEquals(0, mList.getLoadedPageCount());
+    }
+
+    private PagedProductList newList(int pageSize, int prefetchDistance, int keepPages) {
+        PagedProductList list = new PagedProductList(mLoader, pageSize, prefetchDistance, keepPages, mBackground, mMain);
+        list.setOnPageLoadedListener(new PagedProductList.OnPageLoadedListener() {
+            @Override
+            public void onPageLoaded(int start, int count) {
+                mLoaded.add(start + "+" + count);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * runs the loader thread, then the main thread, until neither has work left
+     */
+    private void deliver() {
+        while (mBackground.runAll() | mMain.runAll()) {
+        }
+    }
+
+
+    /**
+     * product i has serial number i, the next mFailures loads throw
+     */
+    private static final class FakeLoader implements PagedProductList.PageLoader {
+        final int mCount;
+        final List<Integer> mRequested = new ArrayList<>();
+        int mFailures;
+
+        FakeLoader(int count) {
+            mCount = count;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int getSerialNumber(int position) {
+            return position;
+        }
+
+        @Override
+        public int loadPage(int start, Product[] out) {
+            mRequested.add(start);
+            if (mFailures > 0) {
+                mFailures--;
+                throw new IllegalStateException("offline");
+            }
+            int count = Math.min(out.length, mCount - start);
+            for (int i = 0; i < count; i++) {
+                out[i] = new Product("Product " + (start + i), 0, "Mug", Money.ofCents(100), start + i);
+            }
+            return count;
+        }
+    }
+
+    private static final class QueueExecutor implements Executor {
+        final List<Runnable> mQueue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        boolean runAll() {
+            boolean ran = false;
+            while (!mQueue.isEmpty()) {
+                mQueue.remove(0).run();
+                ran = true;
+            }
+            return ran;
+        }
+    }
+
+    /**
+     * main thread stand in, the mockable android.jar has no final methods so Handler can be overridden
+     */
+    private static final class QueueHandler extends Handler {
+        final QueueExecutor mPosted = new QueueExecutor();
+        final List<Runnable> mDelayed = new ArrayList<>();
+        final List<Long> mDelays = new ArrayList<>();
+
+        @Override
+        public boolean postDelayed(Runnable runnable, long delayMillis) {
+            mDelayed.add(runnable);
+            mDelays.add(delayMillis);
+            return true;
+        }
+
+        @Override
+        public boolean post(Runnable runnable) {
+            mPosted.execute(runnable);
+            return true;
+        }
+
+        @Override
+        public void removeCallbacksAndMessages(Object token) {
+            mPosted.mQueue.clear();
+            mDelayed.clear();
+        }
+
+        boolean runAll() {
+            return mPosted.runAll();
+        }
+
+        /**
+         * as if the delays had passed
+         */
+        void runDelayed() {
+            List<Runnable> delayed = new ArrayList<>(mDelayed);
+            mDelayed.clear();
+            for (Runnable runnable : delayed) {
+                mPosted.execute(runnable);
+            }
+        }
+    }
+}
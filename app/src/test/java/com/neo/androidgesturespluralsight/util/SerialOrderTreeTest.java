@@ -0,0 +1,150 @@
+package com.neo.androidgesturespluralsight.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SerialOrderTreeTest {
+
+    @Test
+    public void matchesArrayListUnderRandomOperations() {
+        SerialOrderTree tree = new SerialOrderTree();
+        ArrayList<Integer> expected = new ArrayList<>();
+        Random random = new Random(42);
+
+        for (int step = 0; step < 20000; step++) {
+            int op = random.nextInt(4);
+            if (op <= 1 || expected.isEmpty()) {
+                int serial = random.nextInt(2000) - 10;     // a few negative markers too
+                int index = random.nextInt(expected.size() + 1);
+                boolean inserted = tree.insert(index, serial);
+                assertEquals(!expected.contains(serial), inserted);
+                if (inserted) {
+                    expected.add(index, serial);
+                }
+            } else if (op == 2) {
+                int serial = expected.get(random.nextInt(expected.size()));
+                assertEquals(expected.indexOf(serial), tree.remove(serial));
+                expected.remove((Integer) serial);
+            } else {
+                int serial = expected.get(random.nextInt(expected.size()));
+                int to = random.nextInt(expected.size());
+                assertEquals(expected.indexOf(serial), tree.move(serial, to));
+                expected.remove((Integer) serial);
+                expected.add(to, serial);
+            }
+
+            if (step % 97 == 0) {
+                assertEquals(expected.size(), tree.size());
+                int markers = 0;
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(markers, tree.markersBefore(i));
+                    assertEquals((int) expected.get(i), tree.get(i));
+                    assertEquals(i, tree.indexOf(expected.get(i)));
+                    if (expected.get(i) < 0) {
+                        markers++;
+                    }
+                }
+                assertEquals(markers, tree.markersBefore(expected.size()));
+            }
+        }
+
+        int[] array = tree.toArray();
+        assertEquals(expected.size(), array.length);
+        for (int i = 0; i < array.length; i++) {
+            assertEquals((int) expected.get(i), array[i]);
+        }
+    }
+
+    @Test
+    public void positionalChangesNeedNothingHidden() {
+        SerialOrderTree tree = new SerialOrderTree();
+        for (int serial = 0; serial < 100; serial++) {
+            tree.insert(serial, serial);
+        }
+        tree.hide(50);
+        assertTrue("appending is fine", tree.insert(99, 100));
+        try {
+            tree.insert(10, 101);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            tree.move(3, 80);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        tree.removeHidden(50);
+        assertEquals(3, tree.move(3, 80));
+        assertEquals(80, tree.indexOf(3));
+        for (int serial = 0; serial <= 100; serial++) {
+            assertEquals(serial != 50, tree.contains(serial));
+        }
+    }
+
+    /**
+     * hidden entries drop out of every query and come back at their old place, while entries are
+     * appended and removed around them
+     */
+    @Test
+    public void hiddenEntriesComeBackInPlace() {
+        SerialOrderTree tree = new SerialOrderTree();
+        ArrayList<Integer> all = new ArrayList<>();         // list order, hidden entries included
+        ArrayList<Integer> hidden = new ArrayList<>();
+        Random random = new Random(7);
+
+        for (int step = 0; step < 20000; step++) {
+            ArrayList<Integer> visible = new ArrayList<>(all);
+            visible.removeAll(hidden);
+            int op = random.nextInt(5);
+            if (op == 0 || visible.isEmpty()) {
+                int serial = random.nextInt(2000) - 10;
+                if (!all.contains(serial)) {
+                    assertTrue(tree.insert(visible.size(), serial));
+                    all.add(serial);
+                }
+            } else if (op == 1) {
+                int serial = visible.get(random.nextInt(visible.size()));
+                assertEquals(visible.indexOf(serial), tree.remove(serial));
+                all.remove((Integer) serial);
+            } else if (op == 2) {
+                int serial = visible.get(random.nextInt(visible.size()));
+                assertEquals(visible.indexOf(serial), tree.hide(serial));
+                assertFalse(tree.contains(serial));
+                assertEquals(-1, tree.indexOf(serial));
+                hidden.add(serial);
+            } else if (!hidden.isEmpty()) {
+                Integer serial = hidden.remove(random.nextInt(hidden.size()));
+                if (op == 3) {
+                    visible = new ArrayList<>(all);
+                    visible.removeAll(hidden);
+                    assertEquals(visible.indexOf(serial), tree.unhide(serial));
+                } else {
+                    assertTrue(tree.removeHidden(serial));
+                    all.remove(serial);
+                }
+            }
+
+            if (step % 97 == 0) {
+                visible = new ArrayList<>(all);
+                visible.removeAll(hidden);
+                assertEquals(visible.size(), tree.size());
+                int markers = 0;
+                for (int i = 0; i < visible.size(); i++) {
+                    assertEquals(markers, tree.markersBefore(i));
+                    assertEquals((int) visible.get(i), tree.get(i));
+                    assertEquals(i, tree.indexOf(visible.get(i)));
+                    if (visible.get(i) < 0) {
+                        markers++;
+                    }
+                }
+                int[] array = tree.toArray();
+                assertEquals(visible.size(), array.length);
+            }
+        }
+    }
+}